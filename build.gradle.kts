@@ -37,6 +37,7 @@ dependencies {
     implementation(seqra_ir_storage)
 
     implementation(KotlinDependency.Libs.kotlinx_serialization_json)
+    implementation(Libs.kotlinx_serialization_cbor)
     implementation(KotlinDependency.Libs.kotlin_logging)
     implementation(KotlinDependency.Libs.kaml)
 
@@ -54,6 +55,9 @@ val projectAnalyzerJar = tasks.register<ShadowJar>("projectAnalyzerJar") {
     jarWithDependencies("seqra-project-analyzer", "org.seqra.jvm.sast.runner.ProjectAnalyzerRunner")
 }
 
+val encryptedConfigFile = layout.buildDirectory.file("cfg.enc")
+val encryptedBinaryConfigFile = layout.buildDirectory.file("cfg.bin.enc")
+
 val encryptedConfig = tasks.register<JavaExec>("encryptedConfig") {
     mainClass.set("org.seqra.jvm.sast.util.ConfigUtils")
     classpath = sourceSets.test.get().runtimeClasspath
@@ -66,10 +70,11 @@ val encryptedConfig = tasks.register<JavaExec>("encryptedConfig") {
 
     inputs.file(configFile.asFile)
 
-    val result = layout.buildDirectory.file("cfg.enc").get().asFile
-    args(configFile.asFile.absolutePath, result.absolutePath)
+    val result = encryptedConfigFile.get().asFile
+    val binaryResult = encryptedBinaryConfigFile.get().asFile
+    args(configFile.asFile.absolutePath, result.absolutePath, binaryResult.absolutePath)
 
-    outputs.file(result)
+    outputs.files(result, binaryResult)
 }
 
 tasks.register<JavaExec>("runProjectAnalyzer") {
@@ -78,6 +83,13 @@ tasks.register<JavaExec>("runProjectAnalyzer") {
     )
 }
 
+tasks.register<JavaExec>("runBenchmark") {
+    configureAnalyzer(
+        analyzerRunnerClassName = "org.seqra.jvm.sast.benchmark.BenchmarkRunner"
+    )
+    classpath = sourceSets.test.get().runtimeClasspath
+}
+
 fun JavaExec.configureAnalyzer(analyzerRunnerClassName: String) {
     dependsOn(encryptedConfig)
 
@@ -166,8 +178,8 @@ fun ShadowJar.jarWithDependencies(name: String, mainClass: String) {
 fun analyzerEnvironment(): Map<String, Any> {
     val analyzerEnv = mutableMapOf<String, Any>()
 
-    val configFile = encryptedConfig.get().outputs.files.singleFile
-    analyzerEnv["seqra_taint_config_path"] = configFile
+    analyzerEnv["seqra_taint_config_path"] = encryptedConfigFile.get().asFile
+    analyzerEnv["seqra_taint_config_binary_path"] = encryptedBinaryConfigFile.get().asFile
 
     val analyzerVersion = project.findProperty("analyzerVersion") ?: "latest"
     analyzerEnv["SARIF_ORGANIZATION"] = "Seqra"
@@ -1,6 +1,7 @@
 @file:Suppress("ConstPropertyName")
 
 import org.gradle.kotlin.dsl.PluginDependenciesSpecScope
+import org.seqra.common.KotlinDependency
 import org.seqra.common.ProjectPlugin
 import org.seqra.common.dep
 import org.seqra.common.id
@@ -116,6 +117,14 @@ object Libs {
         version = Versions.zt_exec
     )
 
+    // https://github.com/Kotlin/kotlinx.serialization
+    // Must match the kotlinx-serialization-json version
+    val kotlinx_serialization_cbor = dep(
+        group = "org.jetbrains.kotlinx",
+        name = "kotlinx-serialization-cbor",
+        version = KotlinDependency.Versions.kotlinx_serialization
+    )
+
     val fastutil = dep(
         group = "it.unimi.dsi",
         name = "fastutil-core",
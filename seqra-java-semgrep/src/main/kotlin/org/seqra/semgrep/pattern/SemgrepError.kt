@@ -33,7 +33,7 @@ data class SemgrepError(
     }
 
     enum class Reason {
-        ERROR, WARNING, NOT_IMPLEMENTED
+        ERROR, WARNING, NOT_IMPLEMENTED, SKIPPED_NOT_APPLICABLE
     }
 
     enum class Step {
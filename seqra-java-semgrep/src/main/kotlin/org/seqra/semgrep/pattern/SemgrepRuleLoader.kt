@@ -37,9 +37,13 @@ fun YamlMap.readStrings(key: String): List<String>? {
     }
 }
 
-class SemgrepRuleLoader {
+/**
+ * @param useDecisionDiagrams build rule automata with the decision diagram formula backend
+ * */
+class SemgrepRuleLoader(private val useDecisionDiagrams: Boolean = false) {
     private val parser = SemgrepPatternParser.create().cached()
     private val converter = ActionListBuilder.create().cached()
+    private val requirements = SemgrepRuleRequirements()
 
     private val yaml = Yaml(
         configuration = YamlConfiguration(
@@ -49,11 +53,32 @@ class SemgrepRuleLoader {
         )
     )
 
+    /**
+     * Semgrep rule which is parsed but not yet compiled.
+     * Compilation is skipped for the rules which can't match in the analyzed classpath.
+     * */
+    class ParsedRule(
+        val rule: SemgrepYamlRule,
+        val ruleSetName: String,
+        val requirement: ClassRequirement,
+        val errors: SemgrepRuleErrors,
+    )
+
     fun loadRuleSet(
         ruleSetText: String,
         ruleSetName: String,
         semgrepFileErrors: SemgrepFileErrors
     ): List<Pair<TaintRuleFromSemgrep, RuleMetadata>> {
+        val rulesAndMetadata = parseRuleSet(ruleSetText, ruleSetName, semgrepFileErrors).mapNotNull { compileRule(it) }
+        logger.info { "Load ${rulesAndMetadata.size} rules from $ruleSetName" }
+        return rulesAndMetadata
+    }
+
+    fun parseRuleSet(
+        ruleSetText: String,
+        ruleSetName: String,
+        semgrepFileErrors: SemgrepFileErrors
+    ): List<ParsedRule> {
         val ruleSet = runCatching {
             yaml.decodeFromString<SemgrepYamlRuleSet>(ruleSetText)
         }.onFailure { ex ->
@@ -85,16 +110,38 @@ class SemgrepRuleLoader {
             }
         }
 
-        val rulesAndMetadata = javaRules.mapNotNull {
+        return javaRules.map {
             val semgrepRuleErrors = SemgrepRuleErrors(
                 it.id,
                 ruleSetName = ruleSetName
             )
             semgrepFileErrors += semgrepRuleErrors
-            loadRule(it, ruleSetName, semgrepRuleErrors)
+            ParsedRule(it, ruleSetName, requirements.requiredClasses(it), semgrepRuleErrors)
         }
-        logger.info { "Load ${rulesAndMetadata.size} rules from $ruleSetName" }
-        return rulesAndMetadata
+    }
+
+    fun compileRule(
+        rule: ParsedRule,
+        errors: SemgrepRuleErrors = rule.errors,
+    ): Pair<TaintRuleFromSemgrep, RuleMetadata>? =
+        loadRule(rule.rule, rule.ruleSetName, errors)
+
+    /**
+     * Canonical rule text. Compilation result depends only on this text and the rule set name.
+     * */
+    fun ruleContent(rule: ParsedRule): String =
+        yaml.encodeToString(SemgrepYamlRule.serializer(), rule.rule)
+
+    fun ruleMetadata(rule: ParsedRule): RuleMetadata =
+        rule.rule.metadata(SemgrepRuleUtils.getRuleId(rule.ruleSetName, rule.rule.id))
+
+    fun skipNotApplicableRule(rule: ParsedRule) {
+        rule.errors += SemgrepError(
+            SemgrepError.Step.LOAD_RULESET,
+            "Rule skipped: required classes are not in the analyzed classpath",
+            Level.DEBUG,
+            SemgrepError.Reason.SKIPPED_NOT_APPLICABLE
+        )
     }
 
     private fun loadRule(
@@ -103,7 +150,7 @@ class SemgrepRuleLoader {
     ): Pair<TaintRuleFromSemgrep, RuleMetadata>? {
         val ruleId = SemgrepRuleUtils.getRuleId(ruleSetName, rule.id)
 
-        val ruleAutomataBuilder = SemgrepRuleAutomataBuilder(parser, converter)
+        val ruleAutomataBuilder = SemgrepRuleAutomataBuilder(parser, converter, useDecisionDiagrams)
         val ruleAutomata = runCatching {
             ruleAutomataBuilder.build(rule, semgrepRuleErrors)
         }.onFailure { ex ->
@@ -126,21 +173,13 @@ class SemgrepRuleLoader {
             )
         }
 
-        val ruleCwe = rule.cweInfo()
-        val severity = when (rule.severity.lowercase()) {
-            "high", "critical", "error" -> CommonTaintConfigurationSinkMeta.Severity.Error
-            "medium", "warning" -> CommonTaintConfigurationSinkMeta.Severity.Warning
-            else -> CommonTaintConfigurationSinkMeta.Severity.Note
-        }
-
+        val metadata = rule.metadata(ruleId)
         val sinkMeta = SinkMetaData(
-            cwe = ruleCwe,
+            cwe = rule.cweInfo(),
             note = rule.message,
-            severity = severity
+            severity = metadata.severity
         )
 
-        val metadata = RuleMetadata(ruleId, rule.id, rule.message, severity, rule.metadata)
-
         return runCatching {
             convertToTaintRules(ruleAutomata, ruleId, sinkMeta, semgrepRuleErrors) to metadata
         }.onFailure { ex ->
@@ -154,6 +193,16 @@ class SemgrepRuleLoader {
         }.getOrThrow()
     }
 
+    private fun SemgrepYamlRule.metadata(ruleId: String): RuleMetadata {
+        val severity = when (severity.lowercase()) {
+            "high", "critical", "error" -> CommonTaintConfigurationSinkMeta.Severity.Error
+            "medium", "warning" -> CommonTaintConfigurationSinkMeta.Severity.Warning
+            else -> CommonTaintConfigurationSinkMeta.Severity.Note
+        }
+
+        return RuleMetadata(ruleId, id, message, severity, metadata)
+    }
+
     private fun SemgrepYamlRule.isJavaRule(): Boolean = languages.any {
         it.equals("java", ignoreCase = true)
     }
@@ -0,0 +1,179 @@
+package org.seqra.semgrep.pattern
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Classes and methods available in the analyzed classpath.
+ * */
+interface ClasspathQuery {
+    fun classExists(className: String): Boolean
+
+    /**
+     * Class or one of its super classes declares a method with the [methodName].
+     * */
+    fun methodExists(className: String, methodName: String): Boolean
+
+    /**
+     * Class itself declares a method with the [methodName].
+     * */
+    fun declaresMethod(className: String, methodName: String): Boolean
+
+    /**
+     * Enumerate all direct and transitive subclasses of the class.
+     * */
+    fun forEachSubClassName(className: String, body: (String) -> Unit)
+}
+
+/**
+ * Classes that must be in the analyzed classpath for the rule to match anything.
+ *
+ * Requirement is an over-approximation computed from the fully qualified type names
+ * and the method names called on them, without rule compilation:
+ * the rule with unsatisfied requirement can't match,
+ * but the rule with satisfied requirement may still match nothing.
+ * */
+sealed interface ClassRequirement {
+    fun satisfied(classpath: ClasspathQuery): Boolean
+
+    data object None : ClassRequirement {
+        override fun satisfied(classpath: ClasspathQuery): Boolean = true
+    }
+
+    /**
+     * Single type name, which may correspond to any of the [candidates] JVM class names (e.g. for nested classes).
+     * */
+    data class Type(val candidates: List<String>) : ClassRequirement {
+        override fun satisfied(classpath: ClasspathQuery): Boolean = candidates.any { classpath.classExists(it) }
+    }
+
+    /**
+     * Method with the [methodName] called on the receiver of the [type].
+     * Receiver may have a subtype of the [type] in the matched code, so methods of the subclasses are checked too.
+     * */
+    data class Method(val type: Type, val methodName: String) : ClassRequirement {
+        override fun satisfied(classpath: ClasspathQuery): Boolean =
+            type.candidates.any { classpath.methodExists(it, methodName) || subClassDeclaresMethod(classpath, it) }
+
+        private fun subClassDeclaresMethod(classpath: ClasspathQuery, className: String): Boolean {
+            if (!classpath.classExists(className)) return false
+
+            var declared = false
+            classpath.forEachSubClassName(className) { subClassName ->
+                if (!declared) {
+                    declared = classpath.declaresMethod(subClassName, methodName)
+                }
+            }
+            return declared
+        }
+    }
+
+    class AllOf(val requirements: List<ClassRequirement>) : ClassRequirement {
+        override fun satisfied(classpath: ClasspathQuery): Boolean =
+            requirements.all { it.satisfied(classpath) }
+    }
+
+    class AnyOf(val requirements: List<ClassRequirement>) : ClassRequirement {
+        override fun satisfied(classpath: ClasspathQuery): Boolean =
+            requirements.any { it.satisfied(classpath) }
+    }
+}
+
+class SemgrepRuleRequirements(
+    private val parser: SemgrepJavaPatternParser = SemgrepJavaPatternParser(),
+) {
+    private val leafRequirements = ConcurrentHashMap<String, ClassRequirement>()
+
+    fun requiredClasses(rule: SemgrepYamlRule): ClassRequirement {
+        // Unsupported rule will fail on compilation and report an error
+        val semgrepRule = runCatching { parseSemgrepRule(rule) }.getOrNull()
+            ?: return ClassRequirement.None
+
+        return when (semgrepRule) {
+            is SemgrepTaintRule -> mkAllOf(
+                listOf(
+                    mkAnyOf(semgrepRule.sources.map { it.pattern.requirement() }),
+                    mkAnyOf(semgrepRule.sinks.map { it.pattern.requirement() }),
+                )
+            )
+
+            is SemgrepMatchingRule -> mkAnyOf(semgrepRule.rules.map { it.requirement() })
+        }
+    }
+
+    private fun Formula.requirement(): ClassRequirement = when (this) {
+        is Formula.LeafPattern -> leafRequirements.computeIfAbsent(pattern) { leafRequirement(it) }
+        is Formula.And -> mkAllOf(children.map { it.requirement() })
+        is Formula.Or -> mkAnyOf(children.map { it.requirement() })
+        is Formula.Inside -> child.requirement()
+        is Formula.Not,
+        is Formula.MetavarRegex,
+        is Formula.MetavarFocus,
+        is Formula.MetavarPattern,
+        is Formula.MetavarCond,
+        is Formula.Regex -> ClassRequirement.None
+    }
+
+    private fun leafRequirement(pattern: String): ClassRequirement {
+        val result = parser.parseSemgrepJavaPattern(pattern)
+        if (result !is SemgrepJavaPatternParsingResult.Ok) return ClassRequirement.None
+
+        val requirements = mutableListOf<ClassRequirement>()
+        result.pattern.collectRequirements(requirements)
+
+        return mkAllOf(requirements.distinct())
+    }
+
+    private fun SemgrepJavaPattern.collectRequirements(requirements: MutableList<ClassRequirement>) {
+        val requirement = when (this) {
+            is MethodInvocation -> methodRequirement()
+            is TypedMetavar -> type.requirement()
+            is ObjectCreation -> type.requirement()
+            is StaticFieldAccess -> classTypeName.requirement()
+            is FormalArgument -> type.requirement()
+            is VariableAssignment -> type?.requirement()
+            else -> null
+        }
+        requirement?.let { requirements += it }
+
+        children.forEach { it.collectRequirements(requirements) }
+    }
+
+    // Method name is checked only for the receivers of a known type, e.g. (java.sql.Statement $S).execute(...)
+    private fun MethodInvocation.methodRequirement(): ClassRequirement? {
+        val name = (methodName as? ConcreteName)?.name ?: return null
+        val receiver = obj as? TypedMetavar ?: return null
+        val type = receiver.type.requirement() ?: return null
+        return ClassRequirement.Method(type, name)
+    }
+
+    // Only fully qualified names are resolved: simple names depend on the imports of the matched code
+    private fun TypeName.requirement(): ClassRequirement.Type? {
+        val parts = dotSeparatedParts.map { (it as? ConcreteName)?.name ?: return null }
+        if (parts.size < 2 || !parts.first().first().isLowerCase()) return null
+
+        val firstClassPart = parts.indexOfFirst { it.first().isUpperCase() }
+        if (firstClassPart <= 0) return null
+
+        val candidates = (firstClassPart until parts.size).map { classStart ->
+            val packageName = parts.subList(0, classStart).joinToString(".")
+            val className = parts.subList(classStart, parts.size).joinToString("$")
+            "$packageName.$className"
+        }
+
+        return ClassRequirement.Type(candidates)
+    }
+
+    private fun mkAllOf(requirements: List<ClassRequirement>): ClassRequirement {
+        val nonTrivial = requirements.filter { it != ClassRequirement.None }
+        return when (nonTrivial.size) {
+            0 -> ClassRequirement.None
+            1 -> nonTrivial.single()
+            else -> ClassRequirement.AllOf(nonTrivial)
+        }
+    }
+
+    private fun mkAnyOf(requirements: List<ClassRequirement>): ClassRequirement {
+        if (requirements.isEmpty() || requirements.any { it == ClassRequirement.None }) return ClassRequirement.None
+        return requirements.singleOrNull() ?: ClassRequirement.AnyOf(requirements)
+    }
+}
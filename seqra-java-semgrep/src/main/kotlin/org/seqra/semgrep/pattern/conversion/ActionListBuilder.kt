@@ -1,10 +1,10 @@
 package org.seqra.semgrep.pattern.conversion
 
+import org.slf4j.event.Level
 import org.seqra.semgrep.pattern.AbstractSemgrepError
+import org.seqra.semgrep.pattern.SemgrepError
 import org.seqra.semgrep.pattern.SemgrepJavaPattern
-import java.util.Optional
 import java.util.concurrent.ConcurrentHashMap
-import kotlin.jvm.optionals.getOrNull
 
 interface ActionListBuilder {
     fun createActionList(
@@ -19,16 +19,31 @@ interface ActionListBuilder {
     }
 }
 
+/**
+ * Action list builder shared by the rules compiled in parallel.
+ * Errors are cached with the action list and reported to every rule with the pattern.
+ * */
 class CachedActionListBuilder(
     private val builder: ActionListBuilder
 ) : ActionListBuilder {
-    private val cache = ConcurrentHashMap<SemgrepJavaPattern, Optional<SemgrepPatternActionList>>()
+    private class BuiltActionList(val actionList: SemgrepPatternActionList?, val errors: List<AbstractSemgrepError>)
+
+    private val cache = ConcurrentHashMap<SemgrepJavaPattern, BuiltActionList>()
 
     override fun createActionList(
         pattern: SemgrepJavaPattern,
         semgrepError: AbstractSemgrepError,
-    ): SemgrepPatternActionList? =
-        cache.computeIfAbsent(pattern) {
-            Optional.ofNullable(builder.createActionList(pattern, semgrepError))
-        }.getOrNull()
+    ): SemgrepPatternActionList? {
+        val built = cache.computeIfAbsent(pattern) {
+            val patternErrors = SemgrepError(
+                SemgrepError.Step.BUILD_ACTION_LIST_CONVERSION, "$pattern", Level.TRACE, SemgrepError.Reason.ERROR
+            )
+            val result = builder.createActionList(pattern, patternErrors)
+            BuiltActionList(result, patternErrors.errors.toList())
+        }
+
+        // Errors are already logged on the action list creation
+        semgrepError.errors.addAll(built.errors)
+        return built.actionList
+    }
 }
@@ -46,15 +46,18 @@ import org.seqra.semgrep.pattern.conversion.ParamCondition.StringValueMetaVar
 import org.seqra.semgrep.pattern.conversion.SemgrepPatternAction.SignatureModifier
 import org.seqra.semgrep.pattern.conversion.SemgrepPatternAction.SignatureModifierValue
 import org.seqra.semgrep.pattern.conversion.SemgrepPatternAction.SignatureName
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
 
+// Shared by the rules compiled in parallel
 class PatternToActionListConverter: ActionListBuilder {
-    private var nextArtificialMetavarId = 0
+    private val nextArtificialMetavarId = AtomicInteger()
 
     private fun provideArtificialMetavar(): String {
-        return "\$<ARTIFICIAL>_${nextArtificialMetavarId++}"
+        return "\$<ARTIFICIAL>_${nextArtificialMetavarId.getAndIncrement()}"
     }
 
-    val failedTransformations = mutableMapOf<String, Int>()
+    val failedTransformations = ConcurrentHashMap<String, Int>()
 
     private fun transformationFailed(reason: String): Nothing {
         throw TransformationFailed(reason)
@@ -67,8 +70,7 @@ class PatternToActionListConverter: ActionListBuilder {
         transformPatternToActionList(pattern, isRootPattern = true)
     } catch (ex: TransformationFailed) {
         val reason = ex.message
-        val oldValue = failedTransformations.getOrDefault(reason, 0)
-        failedTransformations[reason] = oldValue + 1
+        failedTransformations.merge(reason, 1, Int::plus)
 
         semgrepError += SemgrepError(
             SemgrepError.Step.BUILD_ACTION_LIST_CONVERSION,
@@ -7,9 +7,7 @@ import org.seqra.semgrep.pattern.SemgrepError
 import org.seqra.semgrep.pattern.SemgrepJavaPattern
 import org.seqra.semgrep.pattern.SemgrepJavaPatternParsingResult
 import org.seqra.semgrep.pattern.SemgrepJavaPatternParser
-import java.util.Optional
 import java.util.concurrent.ConcurrentHashMap
-import kotlin.jvm.optionals.getOrNull
 
 interface SemgrepPatternParser {
     fun parseOrNull(
@@ -71,19 +69,33 @@ class DefaultSemgrepPatternParser(
     }
 }
 
+/**
+ * Parser shared by the rules compiled in parallel.
+ * Errors are cached with the parsed pattern and reported to every rule with the pattern,
+ * not only to the rule which parsed it first.
+ * */
 class CachedSemgrepPatternParser(
     private val parser: SemgrepPatternParser,
 ) : SemgrepPatternParser {
-    private val cache = ConcurrentHashMap<String, Optional<SemgrepJavaPattern>>()
+    private class ParsedPattern(val pattern: SemgrepJavaPattern?, val errors: List<AbstractSemgrepError>)
+
+    private val cache = ConcurrentHashMap<Pair<String, SemgrepError.Step>, ParsedPattern>()
 
     override fun parseOrNull(
         pattern: String,
         semgrepError: AbstractSemgrepError,
         semgrepStep: SemgrepError.Step,
-    ): SemgrepJavaPattern? =
-        cache.computeIfAbsent(pattern) {
-            Optional.ofNullable(parser.parseOrNull(pattern, semgrepError, semgrepStep))
-        }.getOrNull()
+    ): SemgrepJavaPattern? {
+        val parsed = cache.computeIfAbsent(pattern to semgrepStep) {
+            val patternErrors = SemgrepError(semgrepStep, pattern, Level.TRACE, SemgrepError.Reason.ERROR)
+            val result = parser.parseOrNull(pattern, patternErrors, semgrepStep)
+            ParsedPattern(result, patternErrors.errors.toList())
+        }
+
+        // Errors are already logged on parsing
+        semgrepError.errors.addAll(parsed.errors)
+        return parsed.pattern
+    }
 }
 
 private val logger = KotlinLogging.logger {}
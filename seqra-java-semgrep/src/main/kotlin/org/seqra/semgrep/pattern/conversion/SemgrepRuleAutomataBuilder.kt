@@ -16,6 +16,8 @@ import org.seqra.semgrep.pattern.SemgrepRule
 import org.seqra.semgrep.pattern.SemgrepRuleErrors
 import org.seqra.semgrep.pattern.SemgrepTaintRule
 import org.seqra.semgrep.pattern.SemgrepYamlRule
+import org.seqra.semgrep.pattern.conversion.automata.AutomataMinimization
+import org.seqra.semgrep.pattern.conversion.automata.MethodFormulaCacheStats
 import org.seqra.semgrep.pattern.conversion.automata.SemgrepRuleAutomata
 import org.seqra.semgrep.pattern.conversion.automata.operations.containsAcceptState
 import org.seqra.semgrep.pattern.conversion.automata.transformSemgrepRuleToAutomata
@@ -28,6 +30,8 @@ import kotlin.time.Duration.Companion.seconds
 class SemgrepRuleAutomataBuilder(
     private val parser: SemgrepPatternParser = SemgrepPatternParser.create(),
     private val converter: ActionListBuilder = ActionListBuilder.create(),
+    private val useDecisionDiagrams: Boolean = false,
+    private val minimization: AutomataMinimization = AutomataMinimization.PartitionRefinement,
 ) {
     data class Stats(
         var ruleParsingFailure: Int = 0,
@@ -35,6 +39,7 @@ class SemgrepRuleAutomataBuilder(
         var metaVarResolvingFailure: Int = 0,
         var actionListConversionFailure: Int = 0,
         var emptyAutomata: Int = 0,
+        val formulaCache: MethodFormulaCacheStats = MethodFormulaCacheStats(),
     ) {
         val isFailure: Boolean
             get() = (ruleParsingFailure + ruleWithoutPattern + metaVarResolvingFailure + actionListConversionFailure + emptyAutomata) > 0
@@ -141,7 +146,9 @@ class SemgrepRuleAutomataBuilder(
         val automataFailures = mutableListOf<SemgrepError>()
         val ruleAutomata = ruleActionListWithoutDuplicates.flatMap { r ->
             val automata = runCatching {
-                transformSemgrepRuleToAutomata(r.rule, r.metaVarInfo, automataBuildTimeout)
+                transformSemgrepRuleToAutomata(
+                    r.rule, r.metaVarInfo, automataBuildTimeout, useDecisionDiagrams, stats.formulaCache, minimization
+                )
             }.onFailure {
                 automataFailures += SemgrepError(
                     SemgrepError.Step.BUILD_TRANSFORM_TO_AUTOMATA,
@@ -0,0 +1,58 @@
+package org.seqra.semgrep.pattern.conversion.automata
+
+import org.seqra.semgrep.pattern.conversion.automata.MethodFormula.Cube
+import org.seqra.semgrep.pattern.conversion.taint.methodFormulaSat
+import org.seqra.semgrep.pattern.conversion.taint.simplifyMethodFormula
+import org.seqra.semgrep.pattern.conversion.taint.trySimplifyMethodFormula
+
+data class MethodFormulaCacheStats(
+    var satHits: Int = 0,
+    var satMisses: Int = 0,
+    var simplifyHits: Int = 0,
+    var simplifyMisses: Int = 0,
+)
+
+/**
+ * Results of the formula checks within a single [AutomataBuilderCtx].
+ * Results depend on the formula manager and meta var info, which are fixed for the context.
+ * */
+class MethodFormulaCache(val stats: MethodFormulaCacheStats) {
+    private val sat = hashMapOf<MethodFormula, Boolean>()
+    private val simplified = hashMapOf<MethodFormula, MethodFormula>()
+    private val simplifiedCubes = hashMapOf<MethodFormula, List<Cube>>()
+
+    fun sat(formula: MethodFormula, check: () -> Boolean): Boolean {
+        sat[formula]?.let {
+            stats.satHits++
+            return it
+        }
+
+        stats.satMisses++
+        return check().also { sat[formula] = it }
+    }
+
+    fun simplified(formula: MethodFormula, simplify: () -> MethodFormula): MethodFormula =
+        simplified.cached(formula, simplify)
+
+    fun simplifiedCubes(formula: MethodFormula, simplify: () -> List<Cube>): List<Cube> =
+        simplifiedCubes.cached(formula, simplify)
+
+    private inline fun <T : Any> MutableMap<MethodFormula, T>.cached(formula: MethodFormula, compute: () -> T): T {
+        get(formula)?.let {
+            stats.simplifyHits++
+            return it
+        }
+
+        stats.simplifyMisses++
+        return compute().also { put(formula, it) }
+    }
+}
+
+fun AutomataBuilderCtx.formulaSat(formula: MethodFormula): Boolean =
+    formulaCache.sat(formula) { methodFormulaSat(formulaManager, formula, metaVarInfo, cancelation) }
+
+fun AutomataBuilderCtx.trySimplifyFormula(formula: MethodFormula): MethodFormula =
+    formulaCache.simplified(formula) { trySimplifyMethodFormula(formulaManager, formula, metaVarInfo, cancelation) }
+
+fun AutomataBuilderCtx.simplifyFormula(formula: MethodFormula): List<Cube> =
+    formulaCache.simplifiedCubes(formula) { simplifyMethodFormula(formulaManager, formula, metaVarInfo, cancelation) }
@@ -0,0 +1,144 @@
+package org.seqra.semgrep.pattern.conversion.automata
+
+import org.seqra.dataflow.util.forEach
+import org.seqra.org.seqra.semgrep.pattern.conversion.automata.OperationCancelation
+
+typealias DecisionNode = Int
+
+/**
+ * Reduced ordered binary decision diagram over the formula predicates.
+ *
+ * Variables are ordered by [PredicateId]. Nodes are hash-consed in the unique table,
+ * so equivalent formulas have the same node and propositional unsatisfiability is a node comparison.
+ * Predicate semantics (signatures and constraints) is not encoded and must be checked on the diagram paths.
+ * */
+class MethodFormulaDecisionDiagram {
+    private data class NodeKey(val variable: PredicateId, val low: DecisionNode, val high: DecisionNode)
+
+    private val variables = arrayListOf(TERMINAL_VAR, TERMINAL_VAR)
+    private val lows = arrayListOf(FALSE, TRUE)
+    private val highs = arrayListOf(FALSE, TRUE)
+
+    private val uniqueTable = hashMapOf<NodeKey, DecisionNode>()
+    private val andCache = hashMapOf<Long, DecisionNode>()
+    private val notCache = hashMapOf<DecisionNode, DecisionNode>()
+    private val formulaCache = hashMapOf<MethodFormula, DecisionNode>()
+
+    fun mkLiteral(variable: PredicateId, negated: Boolean): DecisionNode =
+        if (negated) mkNode(variable, TRUE, FALSE) else mkNode(variable, FALSE, TRUE)
+
+    fun mkNot(node: DecisionNode): DecisionNode {
+        if (node == TRUE) return FALSE
+        if (node == FALSE) return TRUE
+
+        notCache[node]?.let { return it }
+
+        val result = mkNode(variables[node], mkNot(lows[node]), mkNot(highs[node]))
+        notCache[node] = result
+        notCache[result] = node
+        return result
+    }
+
+    fun mkAnd(first: DecisionNode, second: DecisionNode): DecisionNode {
+        if (first == FALSE || second == FALSE) return FALSE
+        if (first == TRUE) return second
+        if (second == TRUE || first == second) return first
+
+        val a = minOf(first, second)
+        val b = maxOf(first, second)
+        val key = (a.toLong() shl Int.SIZE_BITS) or b.toLong()
+        andCache[key]?.let { return it }
+
+        val aVar = variables[a]
+        val bVar = variables[b]
+        val variable = minOf(aVar, bVar)
+
+        val low = mkAnd(cofactor(a, variable, high = false), cofactor(b, variable, high = false))
+        val high = mkAnd(cofactor(a, variable, high = true), cofactor(b, variable, high = true))
+
+        val result = mkNode(variable, low, high)
+        andCache[key] = result
+        return result
+    }
+
+    fun mkOr(first: DecisionNode, second: DecisionNode): DecisionNode =
+        mkNot(mkAnd(mkNot(first), mkNot(second)))
+
+    fun mkFormula(formula: MethodFormula, cancelation: OperationCancelation): DecisionNode {
+        formulaCache[formula]?.let { return it }
+
+        cancelation.check()
+
+        val result = when (formula) {
+            MethodFormula.True -> TRUE
+            MethodFormula.False -> FALSE
+            is MethodFormula.Literal -> mkLiteral(formula.predicate, formula.negated)
+            is MethodFormula.Cube -> mkCube(formula.cube).let { if (formula.negated) mkNot(it) else it }
+            is MethodFormula.And -> formula.all.fold(TRUE) { acc, f -> mkAnd(acc, mkFormula(f, cancelation)) }
+            is MethodFormula.Or -> formula.any.fold(FALSE) { acc, f -> mkOr(acc, mkFormula(f, cancelation)) }
+        }
+
+        formulaCache[formula] = result
+        return result
+    }
+
+    /**
+     * Cubes of the paths to the [TRUE] terminal.
+     * Cubes are pairwise disjoint and their union is equivalent to the [node].
+     * */
+    fun cubes(node: DecisionNode): Sequence<MethodFormulaCubeCompact> = sequence {
+        if (node == FALSE) return@sequence
+
+        val path = MethodFormulaCubeCompact()
+        suspend fun SequenceScope<MethodFormulaCubeCompact>.visit(current: DecisionNode) {
+            if (current == FALSE) return
+            if (current == TRUE) {
+                yield(path.copy())
+                return
+            }
+
+            val variable = variables[current]
+
+            path.negativeLiterals.set(variable)
+            visit(lows[current])
+            path.negativeLiterals.clear(variable)
+
+            path.positiveLiterals.set(variable)
+            visit(highs[current])
+            path.positiveLiterals.clear(variable)
+        }
+
+        visit(node)
+    }
+
+    private fun mkCube(cube: MethodFormulaCubeCompact): DecisionNode {
+        var result = TRUE
+        cube.positiveLiterals.forEach { result = mkAnd(result, mkLiteral(it, negated = false)) }
+        cube.negativeLiterals.forEach { result = mkAnd(result, mkLiteral(it, negated = true)) }
+        return result
+    }
+
+    private fun mkNode(variable: PredicateId, low: DecisionNode, high: DecisionNode): DecisionNode {
+        if (low == high) return low
+
+        return uniqueTable.getOrPut(NodeKey(variable, low, high)) {
+            variables.add(variable)
+            lows.add(low)
+            highs.add(high)
+            variables.size - 1
+        }
+    }
+
+    private fun cofactor(node: DecisionNode, variable: PredicateId, high: Boolean): DecisionNode {
+        if (variables[node] != variable) return node
+        return if (high) highs[node] else lows[node]
+    }
+
+    companion object {
+        const val FALSE: DecisionNode = 0
+        const val TRUE: DecisionNode = 1
+
+        // Terminals are ordered after all predicates
+        private const val TERMINAL_VAR: PredicateId = Int.MAX_VALUE
+    }
+}
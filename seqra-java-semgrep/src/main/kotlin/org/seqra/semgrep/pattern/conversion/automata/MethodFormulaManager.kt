@@ -5,7 +5,14 @@ import org.seqra.semgrep.pattern.conversion.automata.MethodFormula.False
 import org.seqra.semgrep.pattern.conversion.automata.MethodFormula.Or
 import org.seqra.semgrep.pattern.conversion.automata.MethodFormula.True
 
-class MethodFormulaManager {
+/**
+ * @param useDecisionDiagrams check satisfiability and build DNF with the [MethodFormulaDecisionDiagram]
+ * instead of the model enumeration
+ * */
+class MethodFormulaManager(useDecisionDiagrams: Boolean = false) {
+    val decisionDiagram: MethodFormulaDecisionDiagram? =
+        if (useDecisionDiagrams) MethodFormulaDecisionDiagram() else null
+
     private val predicateIds = hashMapOf<Predicate, Int>()
     private val predicates = arrayListOf<Predicate>()
 
@@ -11,7 +11,7 @@ import org.seqra.semgrep.pattern.conversion.automata.operations.addDummyMethodEn
 import org.seqra.semgrep.pattern.conversion.automata.operations.addEndEdges
 import org.seqra.semgrep.pattern.conversion.automata.operations.addPatternStartAndEnd
 import org.seqra.semgrep.pattern.conversion.automata.operations.addPatternStartAndEndOnEveryNode
-import org.seqra.semgrep.pattern.conversion.automata.operations.brzozowskiAlgorithm
+import org.seqra.semgrep.pattern.conversion.automata.operations.minimize
 import org.seqra.semgrep.pattern.conversion.automata.operations.complement
 import org.seqra.semgrep.pattern.conversion.automata.operations.intersection
 import org.seqra.semgrep.pattern.conversion.automata.operations.removePatternStartAndEnd
@@ -22,19 +22,47 @@ import kotlin.time.Duration
 fun transformSemgrepRuleToAutomata(
     rule: ActionListSemgrepRule,
     metaVarInfo: ResolvedMetaVarInfo,
-    timeout: Duration
+    timeout: Duration,
+    useDecisionDiagrams: Boolean = false,
+    formulaCacheStats: MethodFormulaCacheStats = MethodFormulaCacheStats(),
+    minimization: AutomataMinimization = AutomataMinimization.PartitionRefinement,
 ): SemgrepRuleAutomata {
-    val formulaManager = MethodFormulaManager()
+    val formulaManager = MethodFormulaManager(useDecisionDiagrams)
     val cancelation = OperationCancelation(timeout)
-    val ctx = AutomataBuilderCtx(cancelation, formulaManager, metaVarInfo)
+    val ctx = AutomataBuilderCtx(cancelation, formulaManager, metaVarInfo, formulaCacheStats, minimization)
     return ctx.transformSemgrepRuleToAutomata(rule)
 }
 
+/**
+ * Minimization of the intermediate automata of the rule conversion.
+ * Alternative minimizations are used to check the default one.
+ * */
+fun interface AutomataMinimization {
+    fun minimize(ctx: AutomataBuilderCtx, automata: SemgrepRuleAutomata): SemgrepRuleAutomata
+
+    companion object {
+        val PartitionRefinement = AutomataMinimization { ctx, automata -> ctx.minimize(automata) }
+    }
+}
+
 class AutomataBuilderCtx(
     val cancelation: OperationCancelation,
     val formulaManager: MethodFormulaManager,
     val metaVarInfo: ResolvedMetaVarInfo,
-)
+    formulaCacheStats: MethodFormulaCacheStats = MethodFormulaCacheStats(),
+    private val minimization: AutomataMinimization = AutomataMinimization.PartitionRefinement,
+) {
+    val formulaCache = MethodFormulaCache(formulaCacheStats)
+
+    /**
+     * Max number of distinct formulas of one edge type determinized at a single state.
+     * */
+    var maxDeterminizedFormulas: Int = 0
+        internal set
+
+    fun minimizeAutomata(automata: SemgrepRuleAutomata): SemgrepRuleAutomata =
+        minimization.minimize(this, automata)
+}
 
 private fun AutomataBuilderCtx.transformSemgrepRuleToAutomata(
     rule: ActionListSemgrepRule
@@ -43,7 +71,7 @@ private fun AutomataBuilderCtx.transformSemgrepRuleToAutomata(
 
     val resultNfa = transformSemgrepRuleToAutomata(newRule, startingAutomata)
 
-    val resultDfa = brzozowskiAlgorithm(resultNfa)
+    val resultDfa = minimizeAutomata(resultNfa)
     acceptIfCurrentAutomataAcceptsPrefix(resultDfa)
 
     totalizeMethodCalls(resultDfa)
@@ -114,7 +142,7 @@ private fun AutomataBuilderCtx.transformSemgrepRuleToAutomata(
             if (!a1.hasMethodEnter && a2.hasMethodEnter) {
                 a1 = addDummyMethodEnter(a1)
             }
-            brzozowskiAlgorithm(
+            minimizeAutomata(
                 intersection(a1, a2)
             )
         }
@@ -165,7 +193,7 @@ private fun AutomataBuilderCtx.addPositivePattern(
     actionList: SemgrepPatternActionList,
 ): SemgrepRuleAutomata {
     val actionListAutomata = convertActionListToAutomata(formulaManager, actionList)
-    return brzozowskiAlgorithm(
+    return minimizeAutomata(
         intersection(
             curAutomata,
             actionListAutomata
@@ -196,7 +224,7 @@ private fun AutomataBuilderCtx.addNegativePattern(
         actionListAutomata
     )
 
-    return brzozowskiAlgorithm(intersect)
+    return minimizeAutomata(intersect)
 }
 
 private fun AutomataBuilderCtx.addPatternInside(
@@ -222,7 +250,7 @@ private fun AutomataBuilderCtx.addPatternInside(
 
     val actionListAutomata = convertActionListToAutomata(formulaManager, actionList)
     addPatternStartAndEndOnEveryNode(actionListAutomata)
-    return brzozowskiAlgorithm(
+    return minimizeAutomata(
         intersection(
             actionListAutomata,
             curAutomata
@@ -289,7 +317,7 @@ private fun AutomataBuilderCtx.addPatternNotInside(
     }
     complement(automataNotInside)
 
-    return brzozowskiAlgorithm(
+    return minimizeAutomata(
         intersection(
             mainAutomata,
             automataNotInside
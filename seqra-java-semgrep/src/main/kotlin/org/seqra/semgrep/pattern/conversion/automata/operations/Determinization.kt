@@ -9,7 +9,8 @@ import org.seqra.semgrep.pattern.conversion.automata.AutomataNode
 import org.seqra.semgrep.pattern.conversion.automata.MethodFormula
 import org.seqra.semgrep.pattern.conversion.automata.MethodFormulaManager
 import org.seqra.semgrep.pattern.conversion.automata.SemgrepRuleAutomata
-import org.seqra.semgrep.pattern.conversion.taint.methodFormulaSat
+import org.seqra.semgrep.pattern.conversion.automata.formulaSat
+import org.seqra.semgrep.pattern.conversion.automata.trySimplifyFormula
 import org.seqra.semgrep.pattern.conversion.taint.trySimplifyMethodFormula
 import java.util.BitSet
 import java.util.Collections
@@ -108,64 +109,66 @@ private inline fun <reified Type : AutomataEdgeType.AutomataEdgeTypeWithFormula>
     }.groupBy { it.first }.entries.toList()
 
     if (edgesOfThisType.isEmpty()) return
+    maxDeterminizedFormulas = maxOf(maxDeterminizedFormulas, edgesOfThisType.size)
 
-    val n = edgesOfThisType.size
-    val out = hashMapOf<BitSet, MutableList<Int>>()
+    val regions = refineFormulaRegions(edgesOfThisType.map { (formula, edges) ->
+        formula to edges.toBitSet { it.second.nodeId() }
+    })
 
-    if (n > 16) {
-        TODO("Determinization failure: state explosion")
+    // Regions with the same target set are merged into a single edge
+    val out = linkedMapOf<BitSet, MutableList<MethodFormula>>()
+    for (region in regions) {
+        if (region.toSet.isEmpty) continue
+        out.getOrPut(region.toSet, ::mutableListOf).add(formulaManager.mkAnd(region.literals))
     }
 
-    check(n < Int.SIZE_BITS) {
-        "Determinization failed: too many formulas $n"
-    }
+    out.entries.forEach { (toSet, formulas) ->
+        val singleFormula = formulaManager.mkOr(formulas)
 
-    val edgeNodeSets = edgesOfThisType.map { (_, edges) ->
-        edges.toBitSet { it.second.nodeId() }
+        val toNode = createNewNode(toSet)
+        newNode.outEdges.add(createEdge(singleFormula) to toNode)
     }
+}
 
-    for (i in 1..<(1 shl n)) {
-        val toSet = BitSet()
-        edgeNodeSets.forEachIndexed { index, nodeSet ->
-            val take = (i and (1 shl index)) != 0
-            if (!take) return@forEachIndexed
-            toSet.or(nodeSet)
-        }
-        out.getOrPut(toSet, ::mutableListOf).add(i)
-    }
+private class FormulaRegion(val literals: List<MethodFormula>, val toSet: BitSet)
 
-    out.entries.forEach { (toSet, masks) ->
-        val formulas = mutableListOf<MethodFormula>()
-        masks.forEach inner@{ mask ->
-            cancelation.check()
+/**
+ * Splits the formula space into satisfiable disjoint regions, one formula at a time.
+ * Each region is split by the next formula only if both parts are satisfiable,
+ * so the number of sat checks depends on the number of satisfiable regions instead of 2^n.
+ * */
+private fun AutomataBuilderCtx.refineFormulaRegions(
+    formulas: List<Pair<MethodFormula, BitSet>>,
+): List<FormulaRegion> {
+    var regions = listOf(FormulaRegion(emptyList(), BitSet()))
 
-            val formulaLits = edgesOfThisType.mapIndexed { index, (formula, _) ->
-                val takeNegation = (mask and (1 shl index)) == 0
-                if (takeNegation) {
-                    formula.complement()
-                } else {
-                    formula
-                }
-            }
+    for ((formula, nodeSet) in formulas) {
+        val refined = mutableListOf<FormulaRegion>()
 
-            val formula = formulaManager.mkAnd(formulaLits)
+        for (region in regions) {
+            cancelation.check()
 
-            if (!methodFormulaSat(formulaManager, formula, metaVarInfo, cancelation)) {
-                return@inner
+            val positive = region.literals + formula
+            if (!formulaSat(formulaManager.mkAnd(positive))) {
+                refined += region
+                continue
             }
 
-            formulas.add(formula)
-        }
+            val positiveToSet = (region.toSet.clone() as BitSet).also { it.or(nodeSet) }
+            val negative = region.literals + formula.complement()
+            if (!formulaSat(formulaManager.mkAnd(negative))) {
+                refined += FormulaRegion(region.literals, positiveToSet)
+                continue
+            }
 
-        if (formulas.isEmpty()) {
-            return@forEach
+            refined += FormulaRegion(positive, positiveToSet)
+            refined += FormulaRegion(negative, region.toSet)
         }
 
-        val singleFormula = formulaManager.mkOr(formulas)
-
-        val toNode = createNewNode(toSet)
-        newNode.outEdges.add(createEdge(singleFormula) to toNode)
+        regions = refined
     }
+
+    return regions
 }
 
 private fun AutomataBuilderCtx.simplifyAutomata(automata: SemgrepRuleAutomata) {
@@ -195,7 +198,11 @@ private fun AutomataBuilderCtx.simplifyEdge(
 ): AutomataEdgeType {
     if (edge !is AutomataEdgeType.AutomataEdgeTypeWithFormula) return edge
 
-    val simplifiedFormula = trySimplifyMethodFormula(manager, edge.formula, metaVarInfo, cancelation)
+    val simplifiedFormula = if (manager === formulaManager) {
+        trySimplifyFormula(edge.formula)
+    } else {
+        trySimplifyMethodFormula(manager, edge.formula, metaVarInfo, cancelation)
+    }
 
     return when (edge) {
         is AutomataEdgeType.MethodCall -> AutomataEdgeType.MethodCall(simplifiedFormula)
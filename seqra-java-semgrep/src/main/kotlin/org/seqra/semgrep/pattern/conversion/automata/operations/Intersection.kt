@@ -5,7 +5,7 @@ import org.seqra.semgrep.pattern.conversion.automata.AutomataEdgeType
 import org.seqra.semgrep.pattern.conversion.automata.AutomataNode
 import org.seqra.semgrep.pattern.conversion.automata.MethodFormula
 import org.seqra.semgrep.pattern.conversion.automata.SemgrepRuleAutomata
-import org.seqra.semgrep.pattern.conversion.taint.methodFormulaSat
+import org.seqra.semgrep.pattern.conversion.automata.formulaSat
 
 fun AutomataBuilderCtx.intersection(
     a1: SemgrepRuleAutomata,
@@ -80,7 +80,7 @@ private fun AutomataBuilderCtx.intersectMethodFormula(
     f2: MethodFormula
 ): MethodFormula? {
     val result = formulaManager.mkAnd(listOf(f1, f2))
-    if (!methodFormulaSat(formulaManager, result, metaVarInfo, cancelation)) {
+    if (!formulaSat(result)) {
         return null
     }
 
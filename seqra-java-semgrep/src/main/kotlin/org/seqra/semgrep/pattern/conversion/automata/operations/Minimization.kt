@@ -3,7 +3,12 @@ package org.seqra.semgrep.pattern.conversion.automata.operations
 import org.seqra.semgrep.pattern.conversion.automata.AutomataBuilderCtx
 import org.seqra.semgrep.pattern.conversion.automata.AutomataEdgeType
 import org.seqra.semgrep.pattern.conversion.automata.AutomataNode
+import org.seqra.semgrep.pattern.conversion.automata.MethodFormula
 import org.seqra.semgrep.pattern.conversion.automata.SemgrepRuleAutomata
+import org.seqra.semgrep.pattern.conversion.automata.formulaSat
+import org.seqra.semgrep.pattern.conversion.automata.trySimplifyFormula
+import java.util.EnumMap
+import java.util.IdentityHashMap
 
 fun removeDeadNodes(automata: SemgrepRuleAutomata) {
     removeDeadNodes(automata.initialNode, automata.deadNode, mutableSetOf())
@@ -58,46 +63,199 @@ private fun acceptIsReachable(
     return acceptIsReachable
 }
 
-private fun reverse(automata: SemgrepRuleAutomata): SemgrepRuleAutomata {
-    val allNodes = mutableListOf<AutomataNode>()
-    traverse(automata) {
-        allNodes.add(it)
+/**
+ * Minimal DFA of the [automata] language.
+ * Automata is determinized once and then minimized by the partition refinement.
+ * */
+fun AutomataBuilderCtx.minimize(automata: SemgrepRuleAutomata): SemgrepRuleAutomata {
+    if (automata.isDeterministic) {
+        return automata
+    }
+
+    val dfa = determinize(automata, simplifyAutomata = true)
+    val result = mergeEquivalentNodes(dfa)
+    return unifyMetavars(result)
+}
+
+private enum class EdgeKind {
+    MethodCall, MethodEnter, End, PatternStart, PatternEnd
+}
+
+private val AutomataEdgeType.kind: EdgeKind
+    get() = when (this) {
+        is AutomataEdgeType.MethodCall -> EdgeKind.MethodCall
+        is AutomataEdgeType.MethodEnter -> EdgeKind.MethodEnter
+        AutomataEdgeType.End -> EdgeKind.End
+        AutomataEdgeType.PatternStart -> EdgeKind.PatternStart
+        AutomataEdgeType.PatternEnd -> EdgeKind.PatternEnd
+    }
+
+private val AutomataEdgeType.formulaOrTrue: MethodFormula
+    get() = (this as? AutomataEdgeType.AutomataEdgeTypeWithFormula)?.formula ?: MethodFormula.True
+
+/**
+ * Hopcroft partition refinement with symbolic edge labels.
+ *
+ * Block is split by a splitter block and edge kind into the groups of nodes
+ * with equivalent formulas of the edges into the splitter.
+ * Automata may be partial, so all initial blocks are used as splitters.
+ * Edges into the splitter are found with the reverse edge index, so a splitter costs its incoming edges.
+ * */
+private fun AutomataBuilderCtx.mergeEquivalentNodes(dfa: SemgrepRuleAutomata): SemgrepRuleAutomata {
+    val nodes = mutableListOf<AutomataNode>()
+    traverse(dfa) { nodes.add(it) }
+
+    val blockOf = IdentityHashMap<AutomataNode, Int>()
+    val blocks = mutableListOf<List<AutomataNode>>()
+    fun addBlock(block: List<AutomataNode>): Int {
+        val blockId = blocks.size
+        blocks.add(block)
+        block.forEach { blockOf[it] = blockId }
+        return blockId
     }
-    val initialNodes = mutableSetOf<AutomataNode>()
-    val newEdges = mutableListOf<Pair<AutomataEdgeType, Pair<AutomataNode, AutomataNode>>>()
-    allNodes.forEach {
-        if (it.accept) {
-            initialNodes.add(it)
+
+    val predecessors = IdentityHashMap<AutomataNode, EnumMap<EdgeKind, MutableList<Pair<AutomataNode, MethodFormula>>>>()
+    for (node in nodes) {
+        for ((type, to) in node.outEdges) {
+            predecessors.getOrPut(to) { EnumMap(EdgeKind::class.java) }
+                .getOrPut(type.kind, ::mutableListOf)
+                .add(node to type.formulaOrTrue)
         }
-        it.accept = it in automata.initialNodes
-        it.outEdges.forEach { edge ->
-            val (type, to) = edge
-            newEdges.add(type to (to to it))
+    }
+
+    nodes.partition { it.accept }.toList().filter { it.isNotEmpty() }.forEach { addBlock(it) }
+
+    val worklist = ArrayDeque<Pair<Int, EdgeKind>>()
+    val inWorklist = hashSetOf<Pair<Int, EdgeKind>>()
+    fun addSplitter(blockId: Int, kind: EdgeKind) {
+        val splitter = blockId to kind
+        if (inWorklist.add(splitter)) worklist.add(splitter)
+    }
+
+    blocks.indices.forEach { blockId -> EdgeKind.entries.forEach { addSplitter(blockId, it) } }
+
+    while (worklist.isNotEmpty()) {
+        val splitter = worklist.removeFirst()
+        inWorklist.remove(splitter)
+        val (splitterId, kind) = splitter
+
+        // Collected before the splits: splitter block may itself be split during this iteration
+        val incoming = linkedMapOf<Int, IdentityHashMap<AutomataNode, MutableList<MethodFormula>>>()
+        for (target in blocks[splitterId]) {
+            val edges = predecessors[target]?.get(kind) ?: continue
+            for ((node, formula) in edges) {
+                incoming.getOrPut(blockOf.getValue(node)) { IdentityHashMap() }
+                    .getOrPut(node, ::mutableListOf)
+                    .add(formula)
+            }
+        }
+
+        for ((blockId, nodeFormulas) in incoming) {
+            cancelation.check()
+
+            val block = blocks[blockId]
+            val groups = groupByEquivalentFormula(block) { node ->
+                formulaManager.mkOr(nodeFormulas[node].orEmpty())
+            }
+
+            if (groups.size < 2) continue
+
+            blocks[blockId] = groups.first()
+            groups.first().forEach { blockOf[it] = blockId }
+            val newBlockIds = groups.drop(1).map { addBlock(it) }
+
+            val largest = (listOf(blockId) + newBlockIds).maxBy { blocks[it].size }
+            for (edgeKind in EdgeKind.entries) {
+                if ((blockId to edgeKind) in inWorklist) {
+                    newBlockIds.forEach { addSplitter(it, edgeKind) }
+                } else {
+                    (listOf(blockId) + newBlockIds).filter { it != largest }.forEach { addSplitter(it, edgeKind) }
+                }
+            }
         }
-        it.outEdges.clear()
     }
-    newEdges.forEach { (type, edge) ->
-        val (from, to) = edge
-        from.outEdges.add(type to to)
+
+    return buildQuotient(dfa, blocks, blockOf)
+}
+
+/**
+ * Nodes are first grouped by the simplified formula cubes, which are equal for most equivalent formulas.
+ * Equivalence check is used only to merge groups with different cubes.
+ * */
+private inline fun AutomataBuilderCtx.groupByEquivalentFormula(
+    block: List<AutomataNode>,
+    formula: (AutomataNode) -> MethodFormula,
+): List<List<AutomataNode>> {
+    val nodesByKey = linkedMapOf<Set<MethodFormula>, Pair<MethodFormula, MutableList<AutomataNode>>>()
+    for (node in block) {
+        val nodeFormula = trySimplifyFormula(formula(node))
+        nodesByKey.getOrPut(nodeFormula.cubesKey()) { nodeFormula to mutableListOf() }.second.add(node)
     }
 
-    return SemgrepRuleAutomata(
-        automata.formulaManager,
-        initialNodes,
-        isDeterministic = false,
-        hasMethodEnter = automata.hasMethodEnter,
-        hasEndEdges = automata.hasEndEdges,
-    )
+    if (nodesByKey.size < 2) return nodesByKey.values.map { it.second }
+
+    val groups = mutableListOf<Pair<MethodFormula, MutableList<AutomataNode>>>()
+    for ((nodeFormula, nodes) in nodesByKey.values) {
+        val group = groups.firstOrNull { (groupFormula, _) -> formulasEquivalent(groupFormula, nodeFormula) }
+        if (group != null) {
+            group.second.addAll(nodes)
+        } else {
+            groups.add(nodeFormula to nodes)
+        }
+    }
+    return groups.map { it.second }
 }
 
-fun AutomataBuilderCtx.brzozowskiAlgorithm(automata: SemgrepRuleAutomata): SemgrepRuleAutomata {
-    if (automata.isDeterministic) {
-        return automata
+private fun MethodFormula.cubesKey(): Set<MethodFormula> =
+    if (this is MethodFormula.Or) any.toSet() else setOf(this)
+
+private fun AutomataBuilderCtx.formulasEquivalent(first: MethodFormula, second: MethodFormula): Boolean {
+    if (first == second) return true
+
+    val firstOnly = formulaManager.mkAnd(listOf(first, second.complement()))
+    if (formulaSat(firstOnly)) return false
+
+    val secondOnly = formulaManager.mkAnd(listOf(second, first.complement()))
+    return !formulaSat(secondOnly)
+}
+
+private fun buildQuotient(
+    dfa: SemgrepRuleAutomata,
+    blocks: List<List<AutomataNode>>,
+    blockOf: IdentityHashMap<AutomataNode, Int>,
+): SemgrepRuleAutomata {
+    val newNodes = blocks.map { block -> AutomataNode().also { it.accept = block.first().accept } }
+
+    blocks.forEachIndexed { blockId, block ->
+        // Nodes in the block are equivalent, so any of them defines the block edges
+        val representative = block.first()
+        val newNode = newNodes[blockId]
+
+        val formulas = linkedMapOf<Pair<EdgeKind, Int>, MutableList<MethodFormula>>()
+        for ((type, to) in representative.outEdges) {
+            formulas.getOrPut(type.kind to blockOf.getValue(to), ::mutableListOf).add(type.formulaOrTrue)
+        }
+
+        for ((key, edgeFormulas) in formulas) {
+            val (kind, toBlock) = key
+            val formula = dfa.formulaManager.mkOr(edgeFormulas)
+            val type = when (kind) {
+                EdgeKind.MethodCall -> AutomataEdgeType.MethodCall(formula)
+                EdgeKind.MethodEnter -> AutomataEdgeType.MethodEnter(formula)
+                EdgeKind.End -> AutomataEdgeType.End
+                EdgeKind.PatternStart -> AutomataEdgeType.PatternStart
+                EdgeKind.PatternEnd -> AutomataEdgeType.PatternEnd
+            }
+            newNode.outEdges.add(type to newNodes[toBlock])
+        }
     }
 
-    val reversedNfa = reverse(automata)
-    val reversedDfa = determinize(reversedNfa)
-    val newNfa = reverse(reversedDfa)
-    val result = determinize(newNfa, simplifyAutomata = true)
-    return unifyMetavars(result)
+    return SemgrepRuleAutomata(
+        dfa.formulaManager,
+        initialNodes = setOf(newNodes[blockOf.getValue(dfa.initialNode)]),
+        isDeterministic = true,
+        hasMethodEnter = dfa.hasMethodEnter,
+        hasEndEdges = dfa.hasEndEdges,
+        deadNode = blockOf[dfa.deadNode]?.let { newNodes[it] } ?: SemgrepRuleAutomata.createDeadNode(),
+    )
 }
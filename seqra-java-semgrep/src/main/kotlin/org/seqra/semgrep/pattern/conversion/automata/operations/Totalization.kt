@@ -6,7 +6,7 @@ import org.seqra.semgrep.pattern.conversion.automata.AutomataEdgeType
 import org.seqra.semgrep.pattern.conversion.automata.AutomataNode
 import org.seqra.semgrep.pattern.conversion.automata.MethodFormula
 import org.seqra.semgrep.pattern.conversion.automata.SemgrepRuleAutomata
-import org.seqra.semgrep.pattern.conversion.taint.methodFormulaSat
+import org.seqra.semgrep.pattern.conversion.automata.formulaSat
 
 fun AutomataBuilderCtx.totalizeMethodCalls(
     automata: SemgrepRuleAutomata,
@@ -91,7 +91,7 @@ private inline fun <reified EdgeType : AutomataEdgeType.AutomataEdgeTypeWithForm
     val formulas = node.outEdges.mapNotNull { (it.first as? EdgeType)?.formula?.complement() }
 
     val result = formulaManager.mkAnd(formulas)
-    if (!methodFormulaSat(formulaManager, result, metaVarInfo, cancelation)) {
+    if (!formulaSat(result)) {
         return null
     }
 
@@ -17,8 +17,8 @@ import org.seqra.semgrep.pattern.conversion.automata.Position
 import org.seqra.semgrep.pattern.conversion.automata.Predicate
 import org.seqra.semgrep.pattern.conversion.automata.PredicateId
 import org.seqra.semgrep.pattern.conversion.automata.SemgrepRuleAutomata
-import org.seqra.semgrep.pattern.conversion.taint.methodFormulaSat
-import org.seqra.semgrep.pattern.conversion.taint.simplifyMethodFormula
+import org.seqra.semgrep.pattern.conversion.automata.formulaSat
+import org.seqra.semgrep.pattern.conversion.automata.simplifyFormula
 import java.util.BitSet
 import java.util.LinkedList
 import java.util.Queue
@@ -163,7 +163,7 @@ private fun AutomataBuilderCtx.transformEdge(
         return edge to context
     }
 
-    if (!methodFormulaSat(formulaManager, newFormula, metaVarInfo, cancelation)) {
+    if (!formulaSat(newFormula)) {
         return null
     }
 
@@ -264,7 +264,7 @@ private fun MetavarUnificationContext.extendByFormulaPositivePredicates(
     formula: MethodFormula,
     automataCtx: AutomataBuilderCtx
 ): MetavarUnificationContext {
-    val cubes = simplifyMethodFormula(automataCtx.formulaManager, formula, automataCtx.metaVarInfo, automataCtx.cancelation)
+    val cubes = automataCtx.simplifyFormula(formula)
 
     val cubeContexts = cubes.map {
         val positivePredicates = it.cube.positiveLiterals.toSet()
@@ -43,7 +43,7 @@ fun simplifyMethodFormulaOr(
     metaVarInfo: ResolvedMetaVarInfo,
     cancelation: OperationCancelation,
 ): MethodFormula {
-    val simplifiedCubes = formulas.flatMap { formula ->
+    val simplifiedCubes = formulas.asSequence().flatMap { formula ->
         manager.formulaSimplifiedCubes(formula, metaVarInfo, cancelation, applyNotEquivalentTransformations = false)
     }
 
@@ -57,16 +57,31 @@ fun trySimplifyMethodFormula(
     metaVarInfo: ResolvedMetaVarInfo,
     cancelation: OperationCancelation,
 ): MethodFormula {
-    val cubes = simplifyMethodFormula(manager, formula, metaVarInfo, cancelation)
+    val simplifiedCubes = manager.formulaSimplifiedCubes(
+        formula, metaVarInfo, cancelation, applyNotEquivalentTransformations = false
+    )
 
-    if (cubes.size > 100) {
+    // Diagram paths may be exponential in the formula size, so their enumeration is stopped early
+    val enumeratedCubes = if (manager.decisionDiagram != null) {
+        simplifiedCubes.take(MAX_DIAGRAM_CUBES + 1).toList().also {
+            if (it.size > MAX_DIAGRAM_CUBES) return formula
+        }
+    } else {
+        simplifiedCubes.toList()
+    }
+
+    val cubes = manager.simplifyUnion(enumeratedCubes)
+    if (cubes.size > MAX_SIMPLIFIED_CUBES) {
         // todo: avoid formula size explosion
         return formula
     }
 
-    return manager.mkOr(cubes)
+    return manager.mkOr(cubes.map { Cube(it, negated = false) })
 }
 
+private const val MAX_SIMPLIFIED_CUBES = 100
+private const val MAX_DIAGRAM_CUBES = 10 * MAX_SIMPLIFIED_CUBES
+
 fun simplifyMethodFormula(
     manager: MethodFormulaManager,
     formula: MethodFormula,
@@ -88,6 +103,15 @@ fun methodFormulaSat(
     val simplifiedCubes = formula.tryFindSimplifiedCubes()
     if (simplifiedCubes != null) return true
 
+    // Diagram paths are disjoint models, so only predicate semantics is checked on them
+    manager.decisionDiagram?.let { diagram ->
+        val node = diagram.mkFormula(formula, cancelation)
+        return diagram.cubes(node).any { model ->
+            cancelation.check()
+            manager.simplifyMethodFormulaCube(model, metaVarInfo, applyNotEquivalentTransformations = false) != null
+        }
+    }
+
     return methodFormulaCheckSat(formula, cancelation) { model ->
         val simplifiedCube = manager.simplifyMethodFormulaCube(
             model, metaVarInfo, applyNotEquivalentTransformations = false
@@ -101,21 +125,27 @@ private fun MethodFormulaManager.formulaSimplifiedCubes(
     metaVarInfo: ResolvedMetaVarInfo,
     cancelation: OperationCancelation,
     applyNotEquivalentTransformations: Boolean
-): List<MethodFormulaCubeCompact> {
+): Sequence<MethodFormulaCubeCompact> {
     if (!applyNotEquivalentTransformations) {
         val simplifiedCubes = formula.tryFindSimplifiedCubes()
         if (simplifiedCubes != null) {
-            return simplifiedCubes
+            return simplifiedCubes.asSequence()
         }
     }
 
+    // Diagram paths are enumerated lazily, so the caller may stop before all of them are built
     val dnf = when (formula) {
-        MethodFormula.True -> return listOf(MethodFormulaCubeCompact())
-        MethodFormula.False -> return emptyList()
-        else -> methodFormulaDNF(formula, cancelation)
+        MethodFormula.True -> return sequenceOf(MethodFormulaCubeCompact())
+        MethodFormula.False -> return emptySequence()
+        else -> decisionDiagram
+            ?.let { it.cubes(it.mkFormula(formula, cancelation)) }
+            ?: methodFormulaDNF(formula, cancelation).asSequence()
     }
 
-    return dnf.mapNotNull { simplifyMethodFormulaCube(it, metaVarInfo, applyNotEquivalentTransformations) }
+    return dnf.mapNotNull {
+        cancelation.check()
+        simplifyMethodFormulaCube(it, metaVarInfo, applyNotEquivalentTransformations)
+    }
 }
 
 private fun MethodFormula.tryFindSimplifiedCubes(): List<MethodFormulaCubeCompact>? {
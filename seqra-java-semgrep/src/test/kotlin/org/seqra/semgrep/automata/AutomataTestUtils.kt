@@ -0,0 +1,37 @@
+package org.seqra.semgrep.automata
+
+import org.seqra.org.seqra.semgrep.pattern.conversion.automata.OperationCancelation
+import org.seqra.semgrep.pattern.ResolvedMetaVarInfo
+import org.seqra.semgrep.pattern.conversion.SemgrepPatternAction.SignatureName
+import org.seqra.semgrep.pattern.conversion.automata.AutomataBuilderCtx
+import org.seqra.semgrep.pattern.conversion.automata.AutomataNode
+import org.seqra.semgrep.pattern.conversion.automata.MethodEnclosingClassName
+import org.seqra.semgrep.pattern.conversion.automata.MethodFormula
+import org.seqra.semgrep.pattern.conversion.automata.MethodFormulaManager
+import org.seqra.semgrep.pattern.conversion.automata.MethodName
+import org.seqra.semgrep.pattern.conversion.automata.MethodSignature
+import org.seqra.semgrep.pattern.conversion.automata.Predicate
+import org.seqra.semgrep.pattern.conversion.automata.SemgrepRuleAutomata
+import kotlin.time.Duration.Companion.seconds
+
+fun MethodFormulaManager.testCtx() = AutomataBuilderCtx(
+    OperationCancelation(1.seconds),
+    this,
+    ResolvedMetaVarInfo(focusMetaVars = emptySet(), metaVarConstraints = emptyMap())
+)
+
+fun MethodFormulaManager.methodCall(name: String): MethodFormula {
+    val predicate = Predicate(
+        MethodSignature(MethodName(SignatureName.Concrete(name)), MethodEnclosingClassName.anyClassName),
+        constraint = null
+    )
+    return MethodFormula.Literal(predicateId(predicate), negated = false)
+}
+
+fun MethodFormulaManager.automata(root: AutomataNode, hasEndEdges: Boolean) = SemgrepRuleAutomata(
+    this,
+    initialNodes = setOf(root),
+    isDeterministic = false,
+    hasMethodEnter = false,
+    hasEndEdges = hasEndEdges,
+)
@@ -0,0 +1,72 @@
+package org.seqra.semgrep.automata
+
+import org.seqra.semgrep.pattern.SemgrepRuleErrors
+import org.seqra.semgrep.pattern.conversion.SemgrepRuleAutomataBuilder
+import org.seqra.semgrep.pattern.conversion.automata.AutomataBuilderCtx
+import org.seqra.semgrep.pattern.conversion.automata.AutomataMinimization
+import org.seqra.semgrep.pattern.conversion.automata.SemgrepRuleAutomata
+import org.seqra.semgrep.pattern.conversion.automata.operations.minimize
+import org.seqra.semgrep.pattern.parseSemgrepYaml
+import org.seqra.semgrep.util.loadSampleData
+import org.seqra.semgrep.util.samplesDb
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.time.measureTime
+
+/**
+ * Sample rules with a state of more than [POWERSET_LIMIT] formulas of one edge type
+ * were lost by the powerset determinization, which enumerated all subsets of the formulas.
+ * */
+class DeterminizationSamplesTest {
+    @Test
+    fun `sample rules with many formulas are determinized`() {
+        val sampleData = samplesDb().use { it.loadSampleData() }
+        val recorder = FormulasRecorder()
+
+        var ruleCount = 0
+        val largeRules = mutableListOf<String>()
+        for (data in sampleData.values) {
+            val rules = parseSemgrepYaml(data.rule).rules.filter { it.languages.contains("java") }
+            for (rule in rules) {
+                recorder.reset()
+                val buildTime = measureTime {
+                    SemgrepRuleAutomataBuilder(minimization = recorder).build(rule, SemgrepRuleErrors(rule.id, rule.id))
+                }
+                ruleCount++
+
+                if (recorder.maxFormulas > POWERSET_LIMIT) {
+                    largeRules += "${rule.id}: ${recorder.maxFormulas} formulas, built in $buildTime"
+                    assertEquals(emptyList(), recorder.failures, "Rule ${rule.id} automata minimization failed")
+                }
+            }
+        }
+
+        println("${largeRules.size} of $ruleCount sample rules determinize more than $POWERSET_LIMIT formulas")
+        largeRules.forEach { println(it) }
+    }
+
+    private class FormulasRecorder : AutomataMinimization {
+        var maxFormulas = 0
+        val failures = mutableListOf<String>()
+
+        fun reset() {
+            maxFormulas = 0
+            failures.clear()
+        }
+
+        override fun minimize(ctx: AutomataBuilderCtx, automata: SemgrepRuleAutomata): SemgrepRuleAutomata {
+            try {
+                return ctx.minimize(automata)
+            } catch (ex: Throwable) {
+                failures += ex.toString()
+                throw ex
+            } finally {
+                maxFormulas = maxOf(maxFormulas, ctx.maxDeterminizedFormulas)
+            }
+        }
+    }
+
+    companion object {
+        private const val POWERSET_LIMIT = 16
+    }
+}
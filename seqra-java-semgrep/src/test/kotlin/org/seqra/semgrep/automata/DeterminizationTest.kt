@@ -0,0 +1,69 @@
+package org.seqra.semgrep.automata
+
+import org.seqra.semgrep.pattern.conversion.automata.AutomataEdgeType
+import org.seqra.semgrep.pattern.conversion.automata.AutomataNode
+import org.seqra.semgrep.pattern.conversion.automata.MethodFormula
+import org.seqra.semgrep.pattern.conversion.automata.MethodFormulaManager
+import org.seqra.semgrep.pattern.conversion.automata.operations.determinize
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class DeterminizationTest {
+    private val formulaManager = MethodFormulaManager()
+
+    private val ctx = formulaManager.testCtx()
+
+    @Test
+    fun `determinize many alternative sinks`() {
+        val sinkCount = 24
+        val root = AutomataNode()
+        repeat(sinkCount) { i ->
+            val sink = AutomataNode().also { it.accept = true }
+            root.outEdges.add(AutomataEdgeType.MethodCall(methodCall("sink$i")) to sink)
+        }
+
+        val dfa = ctx.determinize(automata(root))
+
+        // Distinct method names are disjoint: one edge per sink and no edge for the other methods
+        val edges = dfa.initialNode.outEdges
+        assertEquals(sinkCount, edges.size)
+        assertTrue(edges.all { (_, to) -> to.accept })
+    }
+
+    @Test
+    fun `determinize overlapping formulas`() {
+        val root = AutomataNode()
+        val anyCall = AutomataNode()
+        val sinkCall = AutomataNode().also { it.accept = true }
+        anyCall.outEdges.add(AutomataEdgeType.End to AutomataNode().also { it.accept = true })
+        root.outEdges.add(AutomataEdgeType.MethodCall(MethodFormula.True) to anyCall)
+        root.outEdges.add(AutomataEdgeType.MethodCall(methodCall("sink")) to sinkCall)
+
+        val dfa = ctx.determinize(automata(root))
+
+        // Split into the sink call, which reaches both nodes, and any other call
+        val edges = dfa.initialNode.outEdges
+        assertEquals(2, edges.size)
+        assertEquals(1, edges.count { (_, to) -> to.accept })
+    }
+
+    @Test
+    fun `reuse formula checks`() {
+        val root = AutomataNode()
+        repeat(4) { i ->
+            root.outEdges.add(AutomataEdgeType.MethodCall(methodCall("sink$i")) to AutomataNode().also { it.accept = true })
+        }
+
+        ctx.determinize(automata(root))
+        val misses = ctx.formulaCache.stats.satMisses
+
+        ctx.determinize(automata(root))
+        assertEquals(misses, ctx.formulaCache.stats.satMisses)
+        assertTrue(ctx.formulaCache.stats.satHits > 0)
+    }
+
+    private fun methodCall(name: String) = formulaManager.methodCall(name)
+
+    private fun automata(root: AutomataNode) = formulaManager.automata(root, hasEndEdges = false)
+}
@@ -0,0 +1,213 @@
+package org.seqra.semgrep.automata
+
+import org.seqra.semgrep.pattern.SemgrepRuleErrors
+import org.seqra.semgrep.pattern.conversion.SemgrepRuleAutomataBuilder
+import org.seqra.semgrep.pattern.conversion.automata.AutomataBuilderCtx
+import org.seqra.semgrep.pattern.conversion.automata.AutomataEdgeType
+import org.seqra.semgrep.pattern.conversion.automata.AutomataMinimization
+import org.seqra.semgrep.pattern.conversion.automata.AutomataNode
+import org.seqra.semgrep.pattern.conversion.automata.MethodFormula
+import org.seqra.semgrep.pattern.conversion.automata.SemgrepRuleAutomata
+import org.seqra.semgrep.pattern.conversion.automata.formulaSat
+import org.seqra.semgrep.pattern.conversion.automata.operations.determinize
+import org.seqra.semgrep.pattern.conversion.automata.operations.minimize
+import org.seqra.semgrep.pattern.conversion.automata.operations.traverse
+import org.seqra.semgrep.pattern.conversion.automata.operations.unifyMetavars
+import org.seqra.semgrep.pattern.parseSemgrepYaml
+import org.seqra.semgrep.util.loadSampleData
+import org.seqra.semgrep.util.samplesDb
+import java.util.Collections
+import java.util.IdentityHashMap
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+import kotlin.time.Duration
+import kotlin.time.measureTimedValue
+
+/**
+ * Compares the partition refinement minimization with the Brzozowski minimization it replaced
+ * on every automata minimized during the compilation of the sample rules.
+ * */
+class MinimizationSamplesTest {
+    @Test
+    fun `partition refinement matches brzozowski on sample rules`() {
+        val sampleData = samplesDb().use { it.loadSampleData() }
+        val minimization = ComparingMinimization()
+
+        for (data in sampleData.values) {
+            val rules = parseSemgrepYaml(data.rule).rules.filter { it.languages.contains("java") }
+            for (rule in rules) {
+                SemgrepRuleAutomataBuilder(minimization = minimization).build(rule, SemgrepRuleErrors(rule.id, rule.id))
+            }
+        }
+
+        println(minimization.report())
+
+        assertTrue(minimization.compared > 0)
+        assertEquals(emptyList(), minimization.mismatches)
+    }
+
+    private class ComparingMinimization : AutomataMinimization {
+        var compared = 0
+        val mismatches = mutableListOf<String>()
+
+        private var partitionRefinementTime = Duration.ZERO
+        private var brzozowskiTime = Duration.ZERO
+
+        override fun minimize(ctx: AutomataBuilderCtx, automata: SemgrepRuleAutomata): SemgrepRuleAutomata {
+            if (automata.isDeterministic) return automata
+
+            // Brzozowski minimization modifies the automata
+            val reference = automata.deepCopy()
+
+            // Formula cache is shared, so the algorithm that runs first is alternated
+            val result: SemgrepRuleAutomata
+            val expected: SemgrepRuleAutomata
+            if (compared % 2 == 0) {
+                result = ctx.timedPartitionRefinement(automata)
+                expected = ctx.timedBrzozowski(reference)
+            } else {
+                expected = ctx.timedBrzozowski(reference)
+                result = ctx.timedPartitionRefinement(automata)
+            }
+            compared++
+
+            val resultNodes = liveNodes(result).size
+            val expectedNodes = liveNodes(expected).size
+            if (resultNodes != expectedNodes) {
+                mismatches += "Automata #$compared: $resultNodes nodes, Brzozowski: $expectedNodes nodes"
+            }
+
+            if (!ctx.languageEquivalent(result, expected)) {
+                mismatches += "Automata #$compared: language differs from Brzozowski"
+            }
+
+            return result
+        }
+
+        fun report(): String =
+            "Minimized $compared automata: partition refinement $partitionRefinementTime, Brzozowski $brzozowskiTime"
+
+        private fun AutomataBuilderCtx.timedPartitionRefinement(automata: SemgrepRuleAutomata): SemgrepRuleAutomata {
+            val (result, time) = measureTimedValue { this.minimize(automata) }
+            partitionRefinementTime += time
+            return result
+        }
+
+        private fun AutomataBuilderCtx.timedBrzozowski(automata: SemgrepRuleAutomata): SemgrepRuleAutomata {
+            val (result, time) = measureTimedValue { brzozowskiAlgorithm(automata) }
+            brzozowskiTime += time
+            return result
+        }
+    }
+}
+
+private fun reverse(automata: SemgrepRuleAutomata): SemgrepRuleAutomata {
+    val allNodes = mutableListOf<AutomataNode>()
+    traverse(automata) {
+        allNodes.add(it)
+    }
+    val initialNodes = mutableSetOf<AutomataNode>()
+    val newEdges = mutableListOf<Pair<AutomataEdgeType, Pair<AutomataNode, AutomataNode>>>()
+    allNodes.forEach {
+        if (it.accept) {
+            initialNodes.add(it)
+        }
+        it.accept = it in automata.initialNodes
+        it.outEdges.forEach { edge ->
+            val (type, to) = edge
+            newEdges.add(type to (to to it))
+        }
+        it.outEdges.clear()
+    }
+    newEdges.forEach { (type, edge) ->
+        val (from, to) = edge
+        from.outEdges.add(type to to)
+    }
+
+    return SemgrepRuleAutomata(
+        automata.formulaManager,
+        initialNodes,
+        isDeterministic = false,
+        hasMethodEnter = automata.hasMethodEnter,
+        hasEndEdges = automata.hasEndEdges,
+    )
+}
+
+private fun AutomataBuilderCtx.brzozowskiAlgorithm(automata: SemgrepRuleAutomata): SemgrepRuleAutomata {
+    val reversedNfa = reverse(automata)
+    val reversedDfa = determinize(reversedNfa)
+    val newNfa = reverse(reversedDfa)
+    val result = determinize(newNfa, simplifyAutomata = true)
+    return unifyMetavars(result)
+}
+
+// Nodes from which an accepting node is reachable. Other nodes only reject and don't affect the language
+private fun liveNodes(automata: SemgrepRuleAutomata): Set<AutomataNode> {
+    val predecessors = IdentityHashMap<AutomataNode, MutableList<AutomataNode>>()
+    val accepting = mutableListOf<AutomataNode>()
+    traverse(automata) { node ->
+        if (node.accept) accepting += node
+        node.outEdges.forEach { (_, to) -> predecessors.getOrPut(to, ::mutableListOf).add(node) }
+    }
+
+    val live = Collections.newSetFromMap(IdentityHashMap<AutomataNode, Boolean>())
+    val queue = ArrayDeque(accepting)
+    while (queue.isNotEmpty()) {
+        val node = queue.removeFirst()
+        if (!live.add(node)) continue
+        queue.addAll(predecessors[node].orEmpty())
+    }
+    return live
+}
+
+private val AutomataEdgeType.formulaOrTrue: MethodFormula
+    get() = (this as? AutomataEdgeType.AutomataEdgeTypeWithFormula)?.formula ?: MethodFormula.True
+
+/**
+ * Language equivalence of the deterministic automata.
+ * Reachable pairs of live nodes must agree on acceptance,
+ * and every edge of a node must be covered by the edges of the same kind of the paired node.
+ * */
+private fun AutomataBuilderCtx.languageEquivalent(first: SemgrepRuleAutomata, second: SemgrepRuleAutomata): Boolean {
+    val firstLive = liveNodes(first)
+    val secondLive = liveNodes(second)
+
+    fun AutomataNode.liveEdges(live: Set<AutomataNode>) = outEdges.filter { (_, to) -> to in live }
+
+    fun covered(edges: List<Pair<AutomataEdgeType, AutomataNode>>, other: List<Pair<AutomataEdgeType, AutomataNode>>) =
+        edges.all { (type, _) ->
+            val otherFormulas = other.filter { it.first::class == type::class }.map { it.first.formulaOrTrue }
+            val uncovered = formulaManager.mkAnd(listOf(type.formulaOrTrue, formulaManager.mkOr(otherFormulas).complement()))
+            !formulaSat(uncovered)
+        }
+
+    val firstInitial = first.initialNode.takeIf { it in firstLive }
+    val secondInitial = second.initialNode.takeIf { it in secondLive }
+    if ((firstInitial == null) != (secondInitial == null)) return false
+    if (firstInitial == null || secondInitial == null) return true
+
+    val visited = hashSetOf<Pair<AutomataNode, AutomataNode>>()
+    val queue = ArrayDeque(listOf(firstInitial to secondInitial))
+    while (queue.isNotEmpty()) {
+        val pair = queue.removeFirst()
+        if (!visited.add(pair)) continue
+
+        val (firstNode, secondNode) = pair
+        if (firstNode.accept != secondNode.accept) return false
+
+        val firstEdges = firstNode.liveEdges(firstLive)
+        val secondEdges = secondNode.liveEdges(secondLive)
+        if (!covered(firstEdges, secondEdges) || !covered(secondEdges, firstEdges)) return false
+
+        for ((firstType, firstTo) in firstEdges) {
+            for ((secondType, secondTo) in secondEdges) {
+                if (firstType::class != secondType::class) continue
+
+                val common = formulaManager.mkAnd(listOf(firstType.formulaOrTrue, secondType.formulaOrTrue))
+                if (formulaSat(common)) queue.add(firstTo to secondTo)
+            }
+        }
+    }
+    return true
+}
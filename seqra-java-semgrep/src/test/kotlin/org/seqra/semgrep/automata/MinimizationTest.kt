@@ -0,0 +1,58 @@
+package org.seqra.semgrep.automata
+
+import org.seqra.semgrep.pattern.conversion.automata.AutomataEdgeType
+import org.seqra.semgrep.pattern.conversion.automata.AutomataNode
+import org.seqra.semgrep.pattern.conversion.automata.MethodFormulaManager
+import org.seqra.semgrep.pattern.conversion.automata.SemgrepRuleAutomata
+import org.seqra.semgrep.pattern.conversion.automata.operations.minimize
+import org.seqra.semgrep.pattern.conversion.automata.operations.traverse
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class MinimizationTest {
+    private val formulaManager = MethodFormulaManager()
+
+    private val ctx = formulaManager.testCtx()
+
+    @Test
+    fun `merge equivalent branches`() {
+        val root = AutomataNode()
+        repeat(4) { i ->
+            val call = AutomataNode()
+            call.outEdges.add(AutomataEdgeType.End to AutomataNode().also { it.accept = true })
+            root.outEdges.add(AutomataEdgeType.MethodCall(methodCall("sink$i")) to call)
+        }
+
+        val dfa = ctx.minimize(automata(root))
+
+        // All sink calls lead to the same state
+        assertEquals(1, dfa.initialNode.outEdges.size)
+        assertEquals(3, nodesCount(dfa))
+    }
+
+    @Test
+    fun `keep distinguishable branches`() {
+        val root = AutomataNode()
+        val sinkCall = AutomataNode().also { it.accept = true }
+        val sourceCall = AutomataNode()
+        sourceCall.outEdges.add(AutomataEdgeType.MethodCall(methodCall("sink")) to sinkCall)
+        root.outEdges.add(AutomataEdgeType.MethodCall(methodCall("source")) to sourceCall)
+        root.outEdges.add(AutomataEdgeType.MethodCall(methodCall("sink")) to AutomataNode().also { it.accept = true })
+
+        val dfa = ctx.minimize(automata(root))
+
+        // Both sink call targets are accepting, so they are merged, but source call target is not
+        assertEquals(2, dfa.initialNode.outEdges.size)
+        assertEquals(3, nodesCount(dfa))
+    }
+
+    private fun nodesCount(automata: SemgrepRuleAutomata): Int {
+        var count = 0
+        traverse(automata) { count++ }
+        return count
+    }
+
+    private fun methodCall(name: String) = formulaManager.methodCall(name)
+
+    private fun automata(root: AutomataNode) = formulaManager.automata(root, hasEndEdges = true)
+}
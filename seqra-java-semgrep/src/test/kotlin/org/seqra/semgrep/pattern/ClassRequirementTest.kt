@@ -0,0 +1,57 @@
+package org.seqra.semgrep.pattern
+
+import kotlin.test.Test
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class ClassRequirementTest {
+    private class TestClass(val superClass: String?, val methods: Set<String>)
+
+    private class TestClasspath(private val classes: Map<String, TestClass>) : ClasspathQuery {
+        override fun classExists(className: String): Boolean = className in classes
+
+        override fun methodExists(className: String, methodName: String): Boolean {
+            val cls = classes[className] ?: return false
+            if (methodName in cls.methods) return true
+            return cls.superClass?.let { methodExists(it, methodName) } ?: false
+        }
+
+        override fun declaresMethod(className: String, methodName: String): Boolean =
+            classes[className]?.methods?.contains(methodName) ?: false
+
+        override fun forEachSubClassName(className: String, body: (String) -> Unit) {
+            classes.filterValues { it.superClass == className }.keys.forEach { subClassName ->
+                body(subClassName)
+                forEachSubClassName(subClassName, body)
+            }
+        }
+    }
+
+    private val classpath = TestClasspath(
+        mapOf(
+            "test.Base" to TestClass(superClass = null, methods = setOf("baseMethod")),
+            "test.Sub" to TestClass(superClass = "test.Base", methods = setOf("subMethod")),
+            "test.SubSub" to TestClass(superClass = "test.Sub", methods = setOf("subSubMethod")),
+        )
+    )
+
+    private fun method(className: String, methodName: String) =
+        ClassRequirement.Method(ClassRequirement.Type(listOf(className)), methodName)
+
+    @Test
+    fun `method of super class satisfies requirement`() {
+        assertTrue(method("test.Sub", "baseMethod").satisfied(classpath))
+    }
+
+    @Test
+    fun `method declared only on subtype satisfies requirement`() {
+        assertTrue(method("test.Base", "subMethod").satisfied(classpath))
+        assertTrue(method("test.Base", "subSubMethod").satisfied(classpath))
+    }
+
+    @Test
+    fun `missing method or class does not satisfy requirement`() {
+        assertFalse(method("test.Base", "unknownMethod").satisfied(classpath))
+        assertFalse(method("test.Unknown", "baseMethod").satisfied(classpath))
+    }
+}
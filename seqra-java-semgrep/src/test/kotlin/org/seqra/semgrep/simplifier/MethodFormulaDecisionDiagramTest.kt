@@ -0,0 +1,90 @@
+package org.seqra.semgrep.simplifier
+
+import org.seqra.org.seqra.semgrep.pattern.conversion.automata.OperationCancelation
+import org.seqra.semgrep.pattern.ResolvedMetaVarInfo
+import org.seqra.semgrep.pattern.conversion.SemgrepPatternAction.SignatureName
+import org.seqra.semgrep.pattern.conversion.automata.MethodEnclosingClassName
+import org.seqra.semgrep.pattern.conversion.automata.MethodFormula
+import org.seqra.semgrep.pattern.conversion.automata.MethodFormulaCubeCompact
+import org.seqra.semgrep.pattern.conversion.automata.MethodFormulaManager
+import org.seqra.semgrep.pattern.conversion.automata.MethodName
+import org.seqra.semgrep.pattern.conversion.automata.MethodSignature
+import org.seqra.semgrep.pattern.conversion.automata.NumberOfArgsConstraint
+import org.seqra.semgrep.pattern.conversion.automata.Predicate
+import org.seqra.semgrep.pattern.conversion.automata.isTrue
+import org.seqra.semgrep.pattern.conversion.taint.eval
+import org.seqra.semgrep.pattern.conversion.taint.methodFormulaSat
+import kotlin.random.Random
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.time.Duration.Companion.seconds
+
+class MethodFormulaDecisionDiagramTest {
+    private val maxVar = 10
+
+    private val metaVarInfo = ResolvedMetaVarInfo(focusMetaVars = emptySet(), metaVarConstraints = emptyMap())
+
+    private val modelsManager = predicatesManager(useDecisionDiagrams = false)
+    private val diagramManager = predicatesManager(useDecisionDiagrams = true)
+
+    @Test
+    fun testDiagramModels() = runRandomFormulas { formula ->
+        val diagram = diagramManager.decisionDiagram!!
+        val cubes = diagram.cubes(diagram.mkFormula(formula, cancelation())).toList()
+
+        for (model in completeModels) {
+            assertEquals(
+                formula.eval(model).isTrue,
+                cubes.any { model.containsAll(it) },
+                "Incorrect diagram for $formula on $model"
+            )
+        }
+    }
+
+    @Test
+    fun testDiagramSat() = runRandomFormulas { formula ->
+        assertEquals(
+            methodFormulaSat(modelsManager, formula, metaVarInfo, cancelation()),
+            methodFormulaSat(diagramManager, formula, metaVarInfo, cancelation()),
+            "Incorrect sat for $formula"
+        )
+    }
+
+    private fun runRandomFormulas(body: (MethodFormula) -> Unit) {
+        val seeds = Random(seed = 42)
+        repeat(500) {
+            val seed = seeds.nextInt()
+            val generator = MethodFormulaSimplifierTest.FormulaGenerator(Random(seed), maxVar, seed.mod(20))
+            body(generator.generateRandomFormula())
+        }
+    }
+
+    // Predicates of the same method with different number of args and of the different methods are disjoint
+    private fun predicatesManager(useDecisionDiagrams: Boolean): MethodFormulaManager {
+        val manager = MethodFormulaManager(useDecisionDiagrams)
+        for (variable in 1 until maxVar) {
+            val signature = MethodSignature(
+                MethodName(SignatureName.Concrete("method${variable % 3}")),
+                MethodEnclosingClassName.anyClassName
+            )
+            val predicateId = manager.predicateId(Predicate(signature, NumberOfArgsConstraint(variable / 3)))
+            check(predicateId == variable)
+        }
+        return manager
+    }
+
+    private val completeModels: List<MethodFormulaCubeCompact> by lazy {
+        var models = listOf(MethodFormulaCubeCompact())
+        for (variable in 1 until maxVar) {
+            models = models.flatMap { model ->
+                listOf(
+                    model.copy().also { it.positiveLiterals.set(variable) },
+                    model.copy().also { it.negativeLiterals.set(variable) },
+                )
+            }
+        }
+        models
+    }
+
+    private fun cancelation() = OperationCancelation(10.seconds)
+}
@@ -26,7 +26,7 @@ abstract class SampleBasedTest(
         check(rule.languages.contains("java"))
 
         val semgrepRuleErrors = SemgrepRuleErrors(rule.id, rule.id,)
-        val builder = SemgrepRuleAutomataBuilder()
+        val builder = SemgrepRuleAutomataBuilder(useDecisionDiagrams = useDecisionDiagrams)
         val ruleAutomata = builder.build(rule, semgrepRuleErrors)
         assertFalse(builder.stats.isFailure, "Could not convert rule to Automata: ${builder.stats}")
 //        ruleAutomata.forEach { it.view() }
@@ -78,6 +78,9 @@ abstract class SampleBasedTest(
 
     private val samplesDb by lazy { samplesDb() }
 
+    // Run samples with decision diagram based formula checks to compare with the default ones
+    private val useDecisionDiagrams = System.getenv("SEMGREP_DECISION_DIAGRAMS") == "true"
+
     private val sampleData by lazy { samplesDb.loadSampleData() }
 
     private val runner by lazy { TestAnalysisRunner(samplesDb) }
@@ -23,4 +23,6 @@ dependencies {
     implementation(seqra_ir_storage)
 
     implementation(KotlinDependency.Libs.kotlin_logging)
+
+    testImplementation(Libs.mockk)
 }
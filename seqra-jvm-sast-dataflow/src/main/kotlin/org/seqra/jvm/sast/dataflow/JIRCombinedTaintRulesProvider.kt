@@ -4,12 +4,17 @@ import org.seqra.ir.api.common.CommonMethod
 import org.seqra.ir.api.common.cfg.CommonInst
 import org.seqra.ir.api.jvm.JIRField
 import org.seqra.dataflow.jvm.ap.ifds.taint.TaintRulesProvider
+import org.seqra.ir.impl.util.adjustEmptyList
+import org.seqra.jvm.sast.dataflow.rules.BoundedCache
+import org.seqra.jvm.sast.dataflow.rules.RuleCaches
+import org.seqra.jvm.sast.dataflow.rules.TaintRuleKind
 
 class JIRCombinedTaintRulesProvider(
-    private val base: TaintRulesProvider,
-    private val combined: TaintRulesProvider,
+    private val base: StatementIndependentTaintRulesProvider,
+    private val combined: StatementIndependentTaintRulesProvider,
     private val combinationOptions: CombinationOptions = CombinationOptions(),
-) : TaintRulesProvider {
+    caches: RuleCaches = RuleCaches(maxSize = null),
+) : StatementIndependentTaintRulesProvider {
     enum class CombinationMode {
         EXTEND, OVERRIDE, IGNORE
     }
@@ -23,37 +28,58 @@ class JIRCombinedTaintRulesProvider(
     )
 
     override fun entryPointRulesForMethod(method: CommonMethod) =
-        combine(combinationOptions.entryPoint) { entryPointRulesForMethod(method) }
+        combine(combinationOptions.entryPoint, TaintRuleKind.ENTRY_POINT, method) { entryPointRulesForMethod(method) }
 
     override fun sourceRulesForMethod(method: CommonMethod, statement: CommonInst) =
-        combine(combinationOptions.source) { sourceRulesForMethod(method, statement) }
+        combine(combinationOptions.source, TaintRuleKind.SOURCE, method) { sourceRulesForMethod(method, statement) }
 
     override fun sinkRulesForMethod(method: CommonMethod, statement: CommonInst) =
-        combine(combinationOptions.sink) { sinkRulesForMethod(method, statement) }
+        combine(combinationOptions.sink, TaintRuleKind.SINK, method) { sinkRulesForMethod(method, statement) }
 
     override fun sinkRulesForMethodExit(method: CommonMethod, statement: CommonInst) =
-        combine(combinationOptions.sink) { sinkRulesForMethodExit(method, statement) }
+        combine(combinationOptions.sink, TaintRuleKind.METHOD_EXIT_SINK, method) { sinkRulesForMethodExit(method, statement) }
 
     override fun sinkRulesForAnalysisEnd(method: CommonMethod, statement: CommonInst) =
-        combine(combinationOptions.sink) { sinkRulesForAnalysisEnd(method, statement) }
+        combine(combinationOptions.sink, TaintRuleKind.ANALYSIS_END_SINK, method) { sinkRulesForAnalysisEnd(method, statement) }
 
     override fun sinkRulesForMethodEntry(method: CommonMethod) =
-        combine(combinationOptions.sink) { sinkRulesForMethodEntry(method) }
+        combine(combinationOptions.sink, TaintRuleKind.METHOD_ENTRY_SINK, method) { sinkRulesForMethodEntry(method) }
 
     override fun passTroughRulesForMethod(method: CommonMethod, statement: CommonInst) =
-        combine(combinationOptions.passThrough) { passTroughRulesForMethod(method, statement) }
+        combine(combinationOptions.passThrough, TaintRuleKind.PASS_THROUGH, method) { passTroughRulesForMethod(method, statement) }
 
     override fun cleanerRulesForMethod(method: CommonMethod, statement: CommonInst) =
-        combine(combinationOptions.cleaner) { cleanerRulesForMethod(method, statement) }
+        combine(combinationOptions.cleaner, TaintRuleKind.CLEANER, method) { cleanerRulesForMethod(method, statement) }
 
     override fun sourceRulesForStaticField(field: JIRField, statement: CommonInst) =
-        combine(combinationOptions.source) { sourceRulesForStaticField(field, statement) }
+        combine(combinationOptions.source, extendedStaticFieldRules, field) { sourceRulesForStaticField(field, statement) }
+
+    // Extended rules are cached, both providers don't depend on the statement
+    private val extendedMethodRules = Array(TaintRuleKind.entries.size) { kind ->
+        caches.cache<CommonMethod, List<*>>(caches.counters("Extended rules: ${TaintRuleKind.entries[kind]}"))
+    }
+    private val extendedStaticFieldRules = caches.cache<JIRField, List<*>>(caches.counters("Extended static field rules"))
 
     private inline fun <T> combine(
         mode: CombinationMode,
-        rules: TaintRulesProvider.() -> Iterable<T>,
+        kind: TaintRuleKind,
+        method: CommonMethod,
+        crossinline rules: TaintRulesProvider.() -> Iterable<T>,
+    ): Iterable<T> = combine(mode, extendedMethodRules[kind.ordinal], method, rules)
+
+    private inline fun <K : Any, T> combine(
+        mode: CombinationMode,
+        extendedRules: BoundedCache<K, List<*>>,
+        key: K,
+        crossinline rules: TaintRulesProvider.() -> Iterable<T>,
     ): Iterable<T> = when (mode) {
-        CombinationMode.EXTEND -> base.rules() + combined.rules()
+        CombinationMode.EXTEND -> {
+            val extended = extendedRules.getOrResolve(key) { (base.rules() + combined.rules()).adjustEmptyList() }
+
+            @Suppress("UNCHECKED_CAST")
+            extended as List<T>
+        }
+
         CombinationMode.OVERRIDE -> combined.rules()
         CombinationMode.IGNORE -> base.rules()
     }
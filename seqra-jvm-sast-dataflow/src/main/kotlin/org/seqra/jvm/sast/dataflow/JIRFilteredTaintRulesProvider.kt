@@ -5,44 +5,81 @@ import org.seqra.ir.api.common.cfg.CommonInst
 import org.seqra.ir.api.jvm.JIRField
 import org.seqra.dataflow.jvm.ap.ifds.taint.TaintRuleFilter
 import org.seqra.dataflow.jvm.ap.ifds.taint.TaintRulesProvider
+import org.seqra.ir.impl.util.adjustEmptyList
+import org.seqra.jvm.sast.dataflow.rules.BoundedCache
+import org.seqra.jvm.sast.dataflow.rules.RuleCaches
+import org.seqra.jvm.sast.dataflow.rules.TaintRuleKind
 
 class JIRFilteredTaintRulesProvider(
-    private val provider: TaintRulesProvider,
-    private val filter: TaintRuleFilter
-) : TaintRulesProvider {
+    private val provider: StatementIndependentTaintRulesProvider,
+    private val filter: TaintRuleFilter,
+    caches: RuleCaches = RuleCaches(maxSize = null),
+) : StatementIndependentTaintRulesProvider {
     override fun entryPointRulesForMethod(method: CommonMethod) =
-        provider.entryPointRulesForMethod(method)
-            .filter { filter.ruleEnabled(it) }
+        filtered(TaintRuleKind.ENTRY_POINT, method) {
+            entryPointRulesForMethod(method).filter { filter.ruleEnabled(it) }
+        }
 
     override fun sourceRulesForMethod(method: CommonMethod, statement: CommonInst) =
-        provider.sourceRulesForMethod(method, statement)
-            .filter { filter.ruleEnabled(it) }
+        filtered(TaintRuleKind.SOURCE, method) {
+            sourceRulesForMethod(method, statement).filter { filter.ruleEnabled(it) }
+        }
 
     override fun sinkRulesForMethod(method: CommonMethod, statement: CommonInst) =
-        provider.sinkRulesForMethod(method, statement)
-            .filter { filter.ruleEnabled(it) }
+        filtered(TaintRuleKind.SINK, method) {
+            sinkRulesForMethod(method, statement).filter { filter.ruleEnabled(it) }
+        }
 
     override fun passTroughRulesForMethod(method: CommonMethod, statement: CommonInst) =
-        provider.passTroughRulesForMethod(method, statement)
-            .filter { filter.ruleEnabled(it) }
+        filtered(TaintRuleKind.PASS_THROUGH, method) {
+            passTroughRulesForMethod(method, statement).filter { filter.ruleEnabled(it) }
+        }
 
     override fun cleanerRulesForMethod(method: CommonMethod, statement: CommonInst) =
-        provider.cleanerRulesForMethod(method, statement)
-            .filter { filter.ruleEnabled(it) }
+        filtered(TaintRuleKind.CLEANER, method) {
+            cleanerRulesForMethod(method, statement).filter { filter.ruleEnabled(it) }
+        }
 
     override fun sinkRulesForMethodExit(method: CommonMethod, statement: CommonInst) =
-        provider.sinkRulesForMethodExit(method, statement)
-            .filter { filter.ruleEnabled(it) }
+        filtered(TaintRuleKind.METHOD_EXIT_SINK, method) {
+            sinkRulesForMethodExit(method, statement).filter { filter.ruleEnabled(it) }
+        }
 
     override fun sinkRulesForAnalysisEnd(method: CommonMethod, statement: CommonInst) =
-        provider.sinkRulesForAnalysisEnd(method, statement)
-            .filter { filter.ruleEnabled(it) }
+        filtered(TaintRuleKind.ANALYSIS_END_SINK, method) {
+            sinkRulesForAnalysisEnd(method, statement).filter { filter.ruleEnabled(it) }
+        }
 
     override fun sinkRulesForMethodEntry(method: CommonMethod) =
-        provider.sinkRulesForMethodEntry(method)
-            .filter { filter.ruleEnabled(it) }
+        filtered(TaintRuleKind.METHOD_ENTRY_SINK, method) {
+            sinkRulesForMethodEntry(method).filter { filter.ruleEnabled(it) }
+        }
 
     override fun sourceRulesForStaticField(field: JIRField, statement: CommonInst) =
-        provider.sourceRulesForStaticField(field, statement)
-            .filter { filter.ruleEnabled(it) }
+        filtered(filteredStaticFieldRules, field) {
+            sourceRulesForStaticField(field, statement).filter { filter.ruleEnabled(it) }
+        }
+
+    // Enabled rule set is fixed and the provider doesn't depend on the statement, so filtered rules are cached
+    private val filteredMethodRules = Array(TaintRuleKind.entries.size) { kind ->
+        caches.cache<CommonMethod, List<*>>(caches.counters("Filtered rules: ${TaintRuleKind.entries[kind]}"))
+    }
+    private val filteredStaticFieldRules = caches.cache<JIRField, List<*>>(caches.counters("Filtered static field rules"))
+
+    private inline fun <T> filtered(
+        kind: TaintRuleKind,
+        method: CommonMethod,
+        crossinline rules: TaintRulesProvider.() -> List<T>,
+    ): Iterable<T> = filtered(filteredMethodRules[kind.ordinal], method, rules)
+
+    private inline fun <K : Any, T> filtered(
+        filteredRules: BoundedCache<K, List<*>>,
+        key: K,
+        crossinline rules: TaintRulesProvider.() -> List<T>,
+    ): Iterable<T> {
+        val result = filteredRules.getOrResolve(key) { provider.rules().adjustEmptyList() }
+
+        @Suppress("UNCHECKED_CAST")
+        return result as List<T>
+    }
 }
@@ -0,0 +1,72 @@
+package org.seqra.jvm.sast.dataflow
+
+import org.seqra.dataflow.configuration.jvm.Argument
+import org.seqra.dataflow.configuration.jvm.ConstantTrue
+import org.seqra.dataflow.configuration.jvm.CopyAllMarks
+import org.seqra.dataflow.configuration.jvm.Result
+import org.seqra.dataflow.configuration.jvm.TaintPassThrough
+import org.seqra.dataflow.jvm.ap.ifds.taint.TaintRulesProvider
+import org.seqra.ir.api.common.CommonMethod
+import org.seqra.ir.api.common.cfg.CommonInst
+import org.seqra.ir.api.jvm.JIRClasspath
+import org.seqra.ir.api.jvm.JIRMethod
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Extends [base] provider with the rules for intrinsic methods which are not expressible in the configuration.
+ * Synthetic rules are resolved once against the classpath.
+ * */
+class JIRSyntheticTaintRulesProvider private constructor(
+    private val base: TaintRulesProvider,
+    private val syntheticPassThrough: Map<JIRMethod, List<TaintPassThrough>>,
+) : TaintRulesProvider by base {
+    private val extendedPassThrough = ConcurrentHashMap<JIRMethod, List<TaintPassThrough>>()
+
+    override fun passTroughRulesForMethod(method: CommonMethod, statement: CommonInst): Iterable<TaintPassThrough> {
+        check(method is JIRMethod) { "Expected method to be JIRMethod" }
+        val baseRules = base.passTroughRulesForMethod(method, statement)
+
+        val syntheticRules = syntheticPassThrough[method] ?: return baseRules
+        return extendedPassThrough.computeIfAbsent(method) { syntheticRules + baseRules }
+    }
+
+    class SyntheticPassThroughRule(
+        val className: String,
+        val methodName: String,
+        val rule: (JIRMethod) -> TaintPassThrough,
+    )
+
+    companion object {
+        private val stringConcat = SyntheticPassThroughRule(
+            className = "java.lang.invoke.StringConcatFactory",
+            methodName = "makeConcatWithConstants",
+        ) { method ->
+            // todo: string concat hack
+            val possibleArgs = (0..20).map { Argument(it) }
+
+            TaintPassThrough(
+                method = method,
+                condition = ConstantTrue,
+                actionsAfter = possibleArgs.map { CopyAllMarks(from = it, to = Result) })
+        }
+
+        val defaultSyntheticPassThroughRules: List<SyntheticPassThroughRule> = listOf(stringConcat)
+
+        fun create(
+            cp: JIRClasspath,
+            base: TaintRulesProvider,
+            passThroughRules: List<SyntheticPassThroughRule> = defaultSyntheticPassThroughRules,
+        ): JIRSyntheticTaintRulesProvider {
+            val syntheticPassThrough = hashMapOf<JIRMethod, MutableList<TaintPassThrough>>()
+            for (rule in passThroughRules) {
+                val cls = cp.findClassOrNull(rule.className) ?: continue
+                for (method in cls.declaredMethods) {
+                    if (method.name != rule.methodName) continue
+                    syntheticPassThrough.getOrPut(method, ::mutableListOf).add(rule.rule(method))
+                }
+            }
+
+            return JIRSyntheticTaintRulesProvider(base, syntheticPassThrough)
+        }
+    }
+}
@@ -8,11 +8,6 @@ import org.seqra.dataflow.ap.ifds.serialization.SummarySerializationContext
 import org.seqra.dataflow.ap.ifds.taint.TaintSinkTracker
 import org.seqra.dataflow.ap.ifds.trace.TraceResolver
 import org.seqra.dataflow.ap.ifds.trace.VulnerabilityWithTrace
-import org.seqra.dataflow.configuration.jvm.Argument
-import org.seqra.dataflow.configuration.jvm.ConstantTrue
-import org.seqra.dataflow.configuration.jvm.CopyAllMarks
-import org.seqra.dataflow.configuration.jvm.Result
-import org.seqra.dataflow.configuration.jvm.TaintPassThrough
 import org.seqra.dataflow.configuration.jvm.TaintSinkMeta
 import org.seqra.dataflow.ifds.UnitResolver
 import org.seqra.dataflow.ifds.UnitType
@@ -29,10 +24,16 @@ import org.seqra.ir.api.common.cfg.CommonInst
 import org.seqra.ir.api.jvm.JIRClasspath
 import org.seqra.ir.api.jvm.JIRMethod
 import org.seqra.ir.api.jvm.RegisteredLocation
+import org.seqra.ir.api.jvm.cfg.JIRInst
+import org.seqra.ir.api.jvm.ext.cfg.callExpr
 import org.seqra.ir.api.jvm.ext.packageName
+import org.seqra.ir.impl.features.classpaths.JIRUnknownClass
 import org.seqra.ir.impl.features.usagesExt
 import org.seqra.jvm.graph.JApplicationGraphImpl
 import org.seqra.util.analysis.ApplicationGraph
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.atomic.AtomicInteger
 import kotlin.time.Duration
 import kotlin.time.Duration.Companion.seconds
 import kotlin.time.TimeSource
@@ -48,6 +49,7 @@ class JIRTaintAnalyzer(
     val summarySerializationContext: SummarySerializationContext,
     val storeSummaries: Boolean,
     val analysisUnit: JIRUnitResolver = PackageUnitResolver(projectLocations = projectLocations),
+    val taintRulesWarmUpThreads: Int? = null,
     val debugOptions: DebugOptions
 ): AutoCloseable {
     data class DebugOptions(
@@ -83,7 +85,13 @@ class JIRTaintAnalyzer(
     ): List<VulnerabilityWithTrace> {
         val analysisStart = TimeSource.Monotonic.markNow()
 
-        val analysisTimeout = ifdsTimeout * 0.95 // Reserve 5% of time for report creation
+        if (taintRulesWarmUpThreads != null) {
+            runCatching { warmUpTaintRules(taintRulesWarmUpThreads) }
+                .onFailure { logger.error(it) { "Taint rules warm-up failed" } }
+        }
+
+        // Reserve 5% of time for report creation, warm-up time is a part of the ifds budget
+        val analysisTimeout = (ifdsTimeout * 0.95 - analysisStart.elapsedNow()).coerceAtLeast(Duration.ZERO)
         runCatching { ifdsEngine.runAnalysis(entryPoints, timeout = analysisTimeout, cancellationTimeout = 30.seconds) }
             .onFailure { logger.error(it) { "Ifds engine failed" } }
 
@@ -140,36 +148,74 @@ class JIRTaintAnalyzer(
         )
     }
 
-    private val taintConfig: TaintRulesProvider by lazy {
-        StringConcatRuleProvider(taintConfiguration)
+    /**
+     * Resolve rules for project methods and their direct callees before the analysis.
+     * Analysis will read resolved rules from cache without resolution in the analyzer threads.
+     * */
+    private fun warmUpTaintRules(parallelism: Int) {
+        val warmUpStart = TimeSource.Monotonic.markNow()
+
+        val methods = projectMethods()
+        val resolvedCallees = ConcurrentHashMap.newKeySet<JIRMethod>()
+        val resolvedRules = AtomicInteger()
+
+        val pool = ForkJoinPool(parallelism)
+        try {
+            pool.submit {
+                methods.parallelStream().forEach { method ->
+                    runCatching { warmUpMethodRules(method, resolvedCallees) }
+                        .onSuccess { resolvedRules.addAndGet(it) }
+                        .onFailure { logger.debug(it) { "Taint rules warm-up failed for $method" } }
+                }
+            }.get()
+        } finally {
+            pool.shutdown()
+        }
+
+        logger.info {
+            "Taint rules warm-up finished in ${warmUpStart.elapsedNow()}: " +
+                "${methods.size} project methods, ${resolvedCallees.size} callees, $resolvedRules rules"
+        }
     }
 
-    private class StringConcatRuleProvider(private val base: TaintRulesProvider) : TaintRulesProvider by base {
-        private var stringConcatPassThrough: TaintPassThrough? = null
+    private fun projectMethods(): List<JIRMethod> = projectLocations
+        .flatMap { location -> cp.db.persistence.findClassSources(cp.db, location) }
+        .mapNotNull { cp.findClassOrNull(it.className) }
+        .filterNot { it is JIRUnknownClass }
+        .flatMap { it.declaredMethods }
+        .filterNot { it.isAbstract || it.isNative }
 
-        private fun stringConcatPassThrough(method: JIRMethod): TaintPassThrough =
-            stringConcatPassThrough ?: generateRule(method).also { stringConcatPassThrough = it }
+    private fun warmUpMethodRules(method: JIRMethod, resolvedCallees: MutableSet<JIRMethod>): Int {
+        val instructions = method.instList
+        val exitInst = instructions.lastOrNull() ?: return 0
 
-        private fun generateRule(method: JIRMethod): TaintPassThrough {
-            // todo: string concat hack
-            val possibleArgs = (0..20).map { Argument(it) }
+        var rules = 0
+        rules += taintConfig.entryPointRulesForMethod(method).count()
+        rules += taintConfig.sinkRulesForMethodEntry(method).count()
+        rules += taintConfig.sinkRulesForMethodExit(method, exitInst).count()
+        rules += taintConfig.sinkRulesForAnalysisEnd(method, exitInst).count()
 
-            return TaintPassThrough(
-                method = method,
-                condition = ConstantTrue,
-                actionsAfter = possibleArgs.map { CopyAllMarks(from = it, to = Result) })
+        for (inst in instructions) {
+            val callee = inst.callExpr?.method?.method ?: continue
+            if (!resolvedCallees.add(callee)) continue
+
+            rules += warmUpCalleeRules(callee, inst)
         }
 
-        override fun passTroughRulesForMethod(method: CommonMethod, statement: CommonInst): Iterable<TaintPassThrough> {
-            check(method is JIRMethod) { "Expected method to be JIRMethod" }
-            val baseRules = base.passTroughRulesForMethod(method, statement)
+        return rules
+    }
 
-            if (method.name == "makeConcatWithConstants" && method.enclosingClass.name == "java.lang.invoke.StringConcatFactory") {
-                return (sequenceOf(stringConcatPassThrough(method)) + baseRules).asIterable()
-            }
+    private fun warmUpCalleeRules(callee: JIRMethod, statement: JIRInst): Int {
+        var rules = 0
+        rules += taintConfig.sourceRulesForMethod(callee, statement).count()
+        rules += taintConfig.sinkRulesForMethod(callee, statement).count()
+        rules += taintConfig.passTroughRulesForMethod(callee, statement).count()
+        rules += taintConfig.cleanerRulesForMethod(callee, statement).count()
+        return rules
+    }
 
-            return baseRules
-        }
+    private val taintConfig: TaintRulesProvider by lazy {
+        JIRSyntheticTaintRulesProvider.create(cp, taintConfiguration)
     }
 
     private fun TaintAnalysisUnitRunnerManager.reportCoverage() = buildString {
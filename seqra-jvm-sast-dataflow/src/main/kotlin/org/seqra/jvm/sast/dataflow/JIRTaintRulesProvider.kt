@@ -5,41 +5,41 @@ import org.seqra.ir.api.common.cfg.CommonInst
 import org.seqra.ir.api.jvm.JIRField
 import org.seqra.ir.api.jvm.JIRMethod
 import org.seqra.dataflow.configuration.jvm.TaintConfigurationItem
-import org.seqra.dataflow.jvm.ap.ifds.taint.TaintRulesProvider
 import org.seqra.jvm.sast.dataflow.rules.TaintConfiguration
+import org.seqra.jvm.sast.dataflow.rules.TaintRuleKind
 
 class JIRTaintRulesProvider(
     private val taintConfiguration: TaintConfiguration
-) : TaintRulesProvider {
-    override fun entryPointRulesForMethod(method: CommonMethod) = getRules(method) {
+) : StatementIndependentTaintRulesProvider {
+    override fun entryPointRulesForMethod(method: CommonMethod) = getRules(method, TaintRuleKind.ENTRY_POINT) {
         taintConfiguration.entryPointForMethod(it)
     }
 
-    override fun sourceRulesForMethod(method: CommonMethod, statement: CommonInst) = getRules(method) {
+    override fun sourceRulesForMethod(method: CommonMethod, statement: CommonInst) = getRules(method, TaintRuleKind.SOURCE) {
         taintConfiguration.sourceForMethod(it)
     }
 
-    override fun sinkRulesForMethod(method: CommonMethod, statement: CommonInst) = getRules(method) {
+    override fun sinkRulesForMethod(method: CommonMethod, statement: CommonInst) = getRules(method, TaintRuleKind.SINK) {
         taintConfiguration.sinkForMethod(it)
     }
 
-    override fun passTroughRulesForMethod(method: CommonMethod, statement: CommonInst) = getRules(method) {
+    override fun passTroughRulesForMethod(method: CommonMethod, statement: CommonInst) = getRules(method, TaintRuleKind.PASS_THROUGH) {
         taintConfiguration.passThroughForMethod(it)
     }
 
-    override fun cleanerRulesForMethod(method: CommonMethod, statement: CommonInst) = getRules(method) {
+    override fun cleanerRulesForMethod(method: CommonMethod, statement: CommonInst) = getRules(method, TaintRuleKind.CLEANER) {
         taintConfiguration.cleanerForMethod(it)
     }
 
-    override fun sinkRulesForMethodExit(method: CommonMethod, statement: CommonInst) = getRules(method) {
+    override fun sinkRulesForMethodExit(method: CommonMethod, statement: CommonInst) = getRules(method, TaintRuleKind.METHOD_EXIT_SINK) {
         taintConfiguration.methodExitSinkForMethod(it)
     }
 
-    override fun sinkRulesForAnalysisEnd(method: CommonMethod, statement: CommonInst) = getRules(method) {
+    override fun sinkRulesForAnalysisEnd(method: CommonMethod, statement: CommonInst) = getRules(method, TaintRuleKind.ANALYSIS_END_SINK) {
         taintConfiguration.analysisEndSinkForMethod(it)
     }
 
-    override fun sinkRulesForMethodEntry(method: CommonMethod) = getRules(method) {
+    override fun sinkRulesForMethodEntry(method: CommonMethod) = getRules(method, TaintRuleKind.METHOD_ENTRY_SINK) {
         taintConfiguration.methodEntrySinkForMethod(it)
     }
 
@@ -48,9 +48,11 @@ class JIRTaintRulesProvider(
 
     private inline fun <T : TaintConfigurationItem> getRules(
         method: CommonMethod,
+        kind: TaintRuleKind,
         body: (JIRMethod) -> Iterable<T>
     ): Iterable<T> {
         check(method is JIRMethod) { "Expected method to be JIRMethod" }
+        if (taintConfiguration.methodRuleKinds(method) and kind.mask == 0) return emptyList()
         return body(method)
     }
 }
@@ -0,0 +1,9 @@
+package org.seqra.jvm.sast.dataflow
+
+import org.seqra.dataflow.jvm.ap.ifds.taint.TaintRulesProvider
+
+/**
+ * [TaintRulesProvider] with rules that depend only on the method or field and not on the statement,
+ * so providers on top of it may cache the rules per method or field.
+ * */
+interface StatementIndependentTaintRulesProvider : TaintRulesProvider
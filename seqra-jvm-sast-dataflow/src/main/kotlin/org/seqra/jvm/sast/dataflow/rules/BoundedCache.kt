@@ -0,0 +1,231 @@
+package org.seqra.jvm.sast.dataflow.rules
+
+import java.lang.ref.ReferenceQueue
+import java.lang.ref.WeakReference
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.LongAdder
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+class CacheCounters(val name: String) {
+    val hits = LongAdder()
+    val misses = LongAdder()
+    val evictions = LongAdder()
+    val size = LongAdder()
+
+    override fun toString(): String =
+        "$name: size=${size.sum()} hits=${hits.sum()} misses=${misses.sum()} evictions=${evictions.sum()}"
+}
+
+/**
+ * Concurrent cache bounded by the shared [RuleCaches] budget.
+ *
+ * Entries are evicted with the CLOCK policy: an entry used since the last sweep gets a second chance.
+ * Evicted values selected with [retainEvicted] are weakly remembered,
+ * so a value that is still in use is returned again instead of an equal copy.
+ * */
+class BoundedCache<K : Any, V : Any> internal constructor(
+    private val budget: RuleCaches,
+    private val counters: CacheCounters,
+    private val retainEvicted: ((V) -> Boolean)?,
+) {
+    private class Entry<V>(val value: V) {
+        // Racy updates are fine: the flag is only an eviction hint
+        @Volatile
+        var referenced: Boolean = false
+    }
+
+    private class EvictedValue<K, V>(val key: K, value: V, queue: ReferenceQueue<V>) : WeakReference<V>(value, queue)
+
+    private val entries = ConcurrentHashMap<K, Entry<V>>()
+    private val evicted = ConcurrentHashMap<K, EvictedValue<K, V>>()
+    private val evictedQueue = ReferenceQueue<V>()
+
+    internal val size: Int get() = entries.size
+
+    // Accessed only under the budget eviction lock
+    private var clockHand: Iterator<Map.Entry<K, Entry<V>>> = entries.entries.iterator()
+
+    operator fun get(key: K): V? {
+        val entry = entries[key]
+        if (entry == null) {
+            counters.misses.increment()
+            return null
+        }
+
+        entry.referenced = true
+        counters.hits.increment()
+        return entry.value
+    }
+
+    fun getOrResolve(key: K, resolve: (K) -> V): V {
+        get(key)?.let { return it }
+
+        var inserted = false
+        val entry = budget.resolving {
+            entries.computeIfAbsent(key) {
+                inserted = true
+                Entry(restoreEvicted(it) ?: resolve(it))
+            }
+        }
+
+        if (inserted) onInsert()
+        return entry.value
+    }
+
+    fun putIfAbsent(key: K, value: V): Boolean {
+        val current = entries.putIfAbsent(key, Entry(value))
+        if (current != null) {
+            current.referenced = true
+            return false
+        }
+
+        onInsert()
+        return true
+    }
+
+    fun clear() {
+        budget.evictionLock.withLock {
+            val size = entries.size
+            entries.clear()
+            evicted.clear()
+            counters.size.add(-size.toLong())
+            budget.onRemove(size)
+        }
+    }
+
+    private fun onInsert() {
+        counters.size.increment()
+        purgeEvicted()
+        budget.onInsert()
+    }
+
+    private fun restoreEvicted(key: K): V? {
+        if (retainEvicted == null) return null
+        return evicted.remove(key)?.get()
+    }
+
+    private fun purgeEvicted() {
+        if (retainEvicted == null) return
+        while (true) {
+            @Suppress("UNCHECKED_CAST")
+            val ref = evictedQueue.poll() as? EvictedValue<K, V> ?: return
+            evicted.remove(ref.key, ref)
+        }
+    }
+
+    /**
+     * Advance the clock hand until [count] entries are evicted or every entry was visited twice.
+     * Must be called under the budget eviction lock.
+     * */
+    internal fun evict(count: Int): Int {
+        var removed = 0
+        var steps = 2 * entries.size
+        while (removed < count && steps-- > 0) {
+            if (!clockHand.hasNext()) {
+                clockHand = entries.entries.iterator()
+                if (!clockHand.hasNext()) break
+            }
+
+            val (key, entry) = clockHand.next()
+            if (entry.referenced) {
+                entry.referenced = false
+                continue
+            }
+
+            if (!entries.remove(key, entry)) continue
+
+            if (retainEvicted?.invoke(entry.value) == true) {
+                evicted[key] = EvictedValue(key, entry.value, evictedQueue)
+            }
+
+            removed++
+            counters.evictions.increment()
+            counters.size.decrement()
+        }
+        return removed
+    }
+}
+
+/**
+ * Size budget and counters of the rule caches.
+ *
+ * The budget is shared by all caches created here, so [maxSize] bounds the total number of entries.
+ * Counters are shared by all caches with the same name.
+ *
+ * Eviction never runs inside a value resolution: a map must not be modified while its computeIfAbsent is running,
+ * so inserts of the nested resolutions are evicted after the outermost resolution completes.
+ * */
+class RuleCaches(val maxSize: Int?) {
+    private val allCounters = linkedMapOf<String, CacheCounters>()
+    private val allCaches = CopyOnWriteArrayList<BoundedCache<*, *>>()
+    private val totalSize = AtomicInteger()
+
+    internal val evictionLock = ReentrantLock()
+
+    private val resolutionDepth = ThreadLocal.withInitial { IntArray(1) }
+
+    val methodNamesWithoutRules = counters("Method names without rules")
+    val patternResolvedClasses = counters("Pattern resolved classes")
+
+    @Synchronized
+    fun counters(name: String): CacheCounters = allCounters.getOrPut(name) { CacheCounters(name) }
+
+    fun <K : Any, V : Any> cache(
+        counters: CacheCounters,
+        retainEvicted: ((V) -> Boolean)? = null,
+    ): BoundedCache<K, V> = BoundedCache<K, V>(this, counters, retainEvicted).also { allCaches += it }
+
+    @Synchronized
+    fun stats(): String = allCounters.values.joinToString("\n") + "\nTotal size: ${totalSize.get()}"
+
+    internal fun <T> resolving(resolve: () -> T): T {
+        val depth = resolutionDepth.get()
+        depth[0]++
+        try {
+            return resolve()
+        } finally {
+            if (--depth[0] == 0) evictIfNeeded()
+        }
+    }
+
+    internal fun onInsert() {
+        totalSize.incrementAndGet()
+        if (resolutionDepth.get()[0] == 0) evictIfNeeded()
+    }
+
+    private fun evictIfNeeded() {
+        val maxSize = maxSize ?: return
+        if (totalSize.get() <= maxSize) return
+
+        // Concurrent inserts may exceed the bound until the running eviction completes
+        if (!evictionLock.tryLock()) return
+        try {
+            evict(totalSize.get() - (maxSize - maxSize / EVICTION_FRACTION))
+        } finally {
+            evictionLock.unlock()
+        }
+    }
+
+    internal fun onRemove(count: Int) {
+        totalSize.addAndGet(-count)
+    }
+
+    private fun evict(excess: Int) {
+        val total = allCaches.sumOf { it.size }.coerceAtLeast(1)
+
+        // Every cache loses a share of entries proportional to its size
+        var removed = 0
+        for (cache in allCaches) {
+            val share = ((excess.toLong() * cache.size + total - 1) / total).toInt()
+            if (share > 0) removed += cache.evict(share)
+        }
+        onRemove(removed)
+    }
+
+    companion object {
+        private const val EVICTION_FRACTION = 10
+    }
+}
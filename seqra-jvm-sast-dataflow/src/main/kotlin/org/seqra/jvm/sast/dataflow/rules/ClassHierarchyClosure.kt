@@ -0,0 +1,45 @@
+package org.seqra.jvm.sast.dataflow.rules
+
+import org.seqra.dataflow.jvm.util.JIRHierarchyInfo
+import org.seqra.ir.api.jvm.JIRClassOrInterface
+import org.seqra.ir.api.jvm.JIRClasspath
+import org.seqra.ir.api.jvm.ext.allSuperHierarchy
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Class hierarchy shared by all rule storages of the classpath.
+ *
+ * Every class is stored once as a [ClassNode] with its location and declared method names,
+ * and super classes of a class reference the shared nodes.
+ * Subclasses are enumerated with the classpath [JIRHierarchyInfo] and are not copied per class.
+ * */
+class ClassHierarchyClosure(private val hierarchyInfo: JIRHierarchyInfo) {
+    constructor(cp: JIRClasspath) : this(JIRHierarchyInfo(cp))
+
+    class ClassNode(
+        val name: String,
+        val locationPath: String,
+        private val declaredMethodNames: Set<String>,
+    ) {
+        fun declaresMethod(methodName: String): Boolean = methodName in declaredMethodNames
+    }
+
+    val cp: JIRClasspath get() = hierarchyInfo.cp
+
+    private val nodes = ConcurrentHashMap<String, ClassNode>()
+    private val superClasses = ConcurrentHashMap<String, Array<ClassNode>>()
+
+    fun superClasses(cls: JIRClassOrInterface): Array<ClassNode> =
+        superClasses[cls.name] ?: superClasses.computeIfAbsent(cls.name) {
+            cls.allSuperHierarchy.map { node(it) }.toTypedArray()
+        }
+
+    fun forEachSubClassName(className: String, body: (String) -> Unit) {
+        hierarchyInfo.forEachSubClassName(className, body)
+    }
+
+    private fun node(cls: JIRClassOrInterface): ClassNode =
+        nodes[cls.name] ?: nodes.computeIfAbsent(cls.name) {
+            ClassNode(cls.name, cls.declaration.location.path, cls.declaredMethods.mapTo(hashSetOf()) { it.name })
+        }
+}
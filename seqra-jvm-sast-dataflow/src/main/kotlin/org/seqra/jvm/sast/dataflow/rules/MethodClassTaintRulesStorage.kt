@@ -7,51 +7,64 @@ import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher.Pat
 import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher.Simple
 import org.seqra.dataflow.configuration.jvm.serialized.SerializedRule
 import org.seqra.dataflow.configuration.jvm.serialized.modifyCondition
-import org.seqra.dataflow.jvm.util.JIRHierarchyInfo
 import org.seqra.ir.api.jvm.JIRClassOrInterface
 import org.seqra.ir.api.jvm.JIRMethod
-import org.seqra.ir.api.jvm.ext.allSuperHierarchy
-import java.util.LinkedList
 import java.util.Queue
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
 
 class MethodTaintRulesStorage<S : SerializedRule> private constructor(
     private val patternManager: PatternManager,
-    private val hierarchyInfo: JIRHierarchyInfo,
-    private val concreteMethodNameRules: MutableMap<String, MethodClassTaintRulesStorage<S>>,
-    private val patternMethodRules: Map<Regex, Array<SerializedRule>>,
+    private val hierarchy: ClassHierarchyClosure,
+    private val caches: RuleCaches,
+    private val concreteMethodNameRules: ConcurrentHashMap<String, MethodClassTaintRulesStorage<S>>,
+    private val patternMethodRules: MultiPatternMatcher<Array<SerializedRule>>,
     private val anyMethodRules: MethodClassTaintRulesStorage<S>?,
 ) {
-    private val methodNameWithoutConcreteRules = hashSetOf<String>()
+    private val methodNameWithoutConcreteRules = caches.cache<String, Unit>(caches.methodNamesWithoutRules)
+
+    // Snapshot of the initial names: concrete rules are later extended only with the pattern rules
+    private val concreteMethodNames: Set<String> = concreteMethodNameRules.keys.toHashSet()
+
+    // Doesn't modify storage and can be called concurrently with the rule lookups
+    fun mayContainRules(methodName: String): Boolean {
+        if (anyMethodRules != null) return true
+        if (methodName in concreteMethodNames) return true
+
+        patternMethodRules.forEachMatch(methodName) { return true }
+        return false
+    }
 
     fun findRules(rules: MutableList<S>, method: JIRMethod) {
         anyMethodRules?.findRules(rules, method)
 
-        val concreteRules = concreteMethodNameRules[method.name]
-        if (concreteRules != null) {
-            concreteRules.findRules(rules, method)
-            return
-        }
+        val concreteRules = concreteMethodNameRules[method.name] ?: resolvePatternRules(method.name) ?: return
+        concreteRules.findRules(rules, method)
+    }
 
-        if (method.name in methodNameWithoutConcreteRules) {
-            return
+    private fun resolvePatternRules(methodName: String): MethodClassTaintRulesStorage<S>? {
+        if (methodNameWithoutConcreteRules[methodName] != null) {
+            return null
         }
 
-        val builder = MethodClassTaintRulesStorage.Builder<S>(patternManager, hierarchyInfo, method.name)
-        resolvePatterns(patternMethodRules, method.name, builder)
-        val storage = builder.build()
+        // Single flight per method name: lookups of the other names are not blocked
+        val storage = concreteMethodNameRules.computeIfAbsent(methodName) {
+            val builder = MethodClassTaintRulesStorage.Builder<S>(patternManager, hierarchy, caches, methodName)
+            resolvePatterns(patternMethodRules, methodName, builder)
+            builder.build()
+        }
 
         if (storage == null) {
-            methodNameWithoutConcreteRules.add(method.name)
-            return
+            methodNameWithoutConcreteRules.putIfAbsent(methodName, Unit)
         }
 
-        concreteMethodNameRules[method.name] = storage
-        storage.findRules(rules, method)
+        return storage
     }
 
     class Builder<S : SerializedRule>(
         private val patternManager: PatternManager,
-        private val hierarchyInfo: JIRHierarchyInfo,
+        private val hierarchy: ClassHierarchyClosure,
+        private val caches: RuleCaches,
     ) {
         private val rules = mutableListOf<S>()
 
@@ -61,7 +74,7 @@ class MethodTaintRulesStorage<S : SerializedRule> private constructor(
 
         fun build(): MethodTaintRulesStorage<S> {
             val concreteMethodNameRules = hashMapOf<String, MethodClassTaintRulesStorage.Builder<S>>()
-            val anyMethodRules = MethodClassTaintRulesStorage.Builder<S>(patternManager, hierarchyInfo)
+            val anyMethodRules = MethodClassTaintRulesStorage.Builder<S>(patternManager, hierarchy, caches)
             val patternMethodRules = hashMapOf<String, MutableSet<S>>()
 
             for (rule in rules) {
@@ -69,7 +82,7 @@ class MethodTaintRulesStorage<S : SerializedRule> private constructor(
                     is ClassPattern -> error("impossible")
                     is Simple -> {
                         concreteMethodNameRules.getOrPut(fName.value) {
-                            MethodClassTaintRulesStorage.Builder(patternManager, hierarchyInfo, concreteMethodName = fName.value)
+                            MethodClassTaintRulesStorage.Builder(patternManager, hierarchy, caches, concreteMethodName = fName.value)
                         }.addRule(rule)
                     }
 
@@ -83,12 +96,14 @@ class MethodTaintRulesStorage<S : SerializedRule> private constructor(
                 }
             }
 
-            val compiledPatternMethodRules = patternMethodRules
-                .mapKeys { patternManager.compilePattern(it.key) }
-                .mapValuesTo(hashMapOf()) { it.value.toTypedArray<SerializedRule>() }
-
+            val compiledPatternMethodRules = MultiPatternMatcher.build(
+                patternMethodRules.map { (pattern, rules) ->
+                    patternManager.compilePattern(pattern) to rules.toTypedArray<SerializedRule>()
+                },
+                fullMatch = false
+            )
 
-            val concreteRules = hashMapOf<String, MethodClassTaintRulesStorage<S>>()
+            val concreteRules = ConcurrentHashMap<String, MethodClassTaintRulesStorage<S>>()
             for ((methodName, builder) in concreteMethodNameRules) {
                 resolvePatterns(compiledPatternMethodRules, methodName, builder)
                 concreteRules[methodName] = builder.build() ?: continue
@@ -96,7 +111,8 @@ class MethodTaintRulesStorage<S : SerializedRule> private constructor(
 
             return MethodTaintRulesStorage(
                 patternManager,
-                hierarchyInfo,
+                hierarchy,
+                caches,
                 concreteRules,
                 compiledPatternMethodRules,
                 anyMethodRules.build()
@@ -106,31 +122,38 @@ class MethodTaintRulesStorage<S : SerializedRule> private constructor(
 
     companion object {
         private fun <S : SerializedRule> resolvePatterns(
-            patterns: Map<Regex, Array<SerializedRule>>,
+            patterns: MultiPatternMatcher<Array<SerializedRule>>,
             methodName: String,
             builder: MethodClassTaintRulesStorage.Builder<S>,
         ) {
-            for ((pattern, rules) in patterns) {
-                if (pattern.containsMatchIn(methodName)) {
-                    for (rule in rules) {
-                        @Suppress("UNCHECKED_CAST")
-                        builder.addRule(rule as S)
-                    }
+            patterns.forEachMatch(methodName) { rules ->
+                for (rule in rules) {
+                    @Suppress("UNCHECKED_CAST")
+                    builder.addRule(rule as S)
                 }
             }
         }
     }
 }
 
+/**
+ * Rules of a single method name (or of any method name) grouped by class.
+ *
+ * Lookups run concurrently and extend the concrete class rules without a storage-wide lock.
+ * Rule sets are only extended, so a concurrent lookup sees either the old or the extended set.
+ * */
 private class MethodClassTaintRulesStorage<S : SerializedRule> private constructor(
-    private val hierarchyInfo: JIRHierarchyInfo,
+    private val hierarchy: ClassHierarchyClosure,
+    caches: RuleCaches,
     private val concreteMethodName: String?,
     private val patterns: ClassNamePattern<S>,
     private val anyRules: Array<S>,
-    private val concreteClassRules: MutableMap<String, MutableSet<S>>,
+    private val concreteClassRules: ConcurrentHashMap<String, MutableSet<S>>,
 ) {
-    private val patternResolvedClasses = hashSetOf<String>()
-    private val pushDelayRulesQueue: Queue<Pair<String, Iterable<S>>> = LinkedList()
+    // Eviction is safe: classes with rules are found in the concrete rules before this check
+    private val patternResolvedClasses = caches.cache<String, Unit>(caches.patternResolvedClasses)
+    private val pushDelayRulesQueue: Queue<Pair<String, Iterable<S>>> = ConcurrentLinkedQueue()
+    private val pushDelayRulesLock = Any()
 
     init {
         for ((className, rules) in concreteClassRules) {
@@ -146,17 +169,24 @@ private class MethodClassTaintRulesStorage<S : SerializedRule> private construct
     private fun pushDelayedRules() {
         if (pushDelayRulesQueue.isEmpty()) return
 
-        val iter = pushDelayRulesQueue.iterator()
-        while (iter.hasNext()) {
-            val (className, rules) = iter.next()
-            iter.remove()
+        // Rules are removed from the queue only when pushed, so a concurrent lookup
+        // that sees a non-empty queue waits here until all delayed rules are pushed
+        synchronized(pushDelayRulesLock) {
+            while (true) {
+                val (className, rules) = pushDelayRulesQueue.peek() ?: break
+
+                val cls = hierarchy.cp.findClassOrNull(className)
+                if (cls != null) {
+                    pushRuleForSuperTypes(cls, rules)
+                }
 
-            val cls = hierarchyInfo.cp.findClassOrNull(className) ?: continue
-            pushRuleForSuperTypes(cls, rules)
+                pushDelayRulesQueue.poll()
+            }
         }
     }
 
     private fun pushRuleForSuperTypes(cls: JIRClassOrInterface, rules: Iterable<S>) {
+        val methodName = concreteMethodName ?: return
         val typeCondition = SerializedCondition.IsType(
             typeIs = Simple(cls.name),
             pos = PositionBase.This
@@ -168,10 +198,9 @@ private class MethodClassTaintRulesStorage<S : SerializedRule> private construct
             }
         }
 
-        cls.allSuperHierarchy.filter { c ->
-            c.declaredMethods.any { it.name == concreteMethodName }
-        }.forEach { c ->
-            concreteClassRules.getOrPut(c.name, ::hashSetOf).addAll(conditionedRules)
+        for (c in hierarchy.superClasses(cls)) {
+            if (!c.declaresMethod(methodName)) continue
+            concreteClassRules.classRules(c.name).addAll(conditionedRules)
         }
     }
 
@@ -181,14 +210,14 @@ private class MethodClassTaintRulesStorage<S : SerializedRule> private construct
         dst.addAll(anyRules)
 
         findRules(dst, method.enclosingClass.name)
-        method.enclosingClass.allSuperHierarchy.forEach { cls ->
+        for (cls in hierarchy.superClasses(method.enclosingClass)) {
             val overrideRules = mutableListOf<S>()
             findRules(overrideRules, cls.name)
             overrideRules.removeAll { !it.overrides }
             dst.addAll(overrideRules)
         }
 
-        hierarchyInfo.forEachSubClassName(method.enclosingClass.name) { className ->
+        hierarchy.forEachSubClassName(method.enclosingClass.name) { className ->
             findRules(dst, className)
         }
     }
@@ -200,19 +229,23 @@ private class MethodClassTaintRulesStorage<S : SerializedRule> private construct
             return
         }
 
-        if (!patternResolvedClasses.add(className)) {
+        if (patternResolvedClasses[className] != null) {
             return
         }
 
+        // Concurrent lookups of the same class may resolve it twice with the same result
         val newRules = hashSetOf<S>()
         resolveClassNamePattern(patterns, className, newRules)
 
-        if (newRules.isEmpty()) return
+        if (newRules.isEmpty()) {
+            patternResolvedClasses.putIfAbsent(className, Unit)
+            return
+        }
 
         registerRules(className, newRules)
         pushDelayedRules()
 
-        concreteClassRules.getOrPut(className, ::hashSetOf).addAll(newRules)
+        concreteClassRules.classRules(className).addAll(newRules)
         dst.addAll(newRules)
 
         return
@@ -220,14 +253,15 @@ private class MethodClassTaintRulesStorage<S : SerializedRule> private construct
 
     private class ClassNamePattern<S : SerializedRule>(
         val concreteClassNameAnyPackageRules: Map<String, Array<S>>,
-        val concreteClassPackagePatternRules: Map<String, Array<Pair<Regex, Array<S>>>>,
-        val concretePackageClassPatternRules: Map<String, Array<Pair<Regex, Array<S>>>>,
-        val classPatternPackagePatternRules: Array<Pair<Regex, Array<Pair<Regex, Array<S>>>>>,
+        val concreteClassPackagePatternRules: Map<String, Array<Pair<PatternMatcher, Array<S>>>>,
+        val concretePackageClassPatternRules: Map<String, Array<Pair<PatternMatcher, Array<S>>>>,
+        val classPatternPackagePatternRules: MultiPatternMatcher<Array<Pair<PatternMatcher, Array<S>>>>,
     )
 
     class Builder<S : SerializedRule>(
         private val patternManager: PatternManager,
-        private val hierarchyInfo: JIRHierarchyInfo,
+        private val hierarchy: ClassHierarchyClosure,
+        private val caches: RuleCaches,
         private val concreteMethodName: String? = null,
     ) {
         private val rules = mutableListOf<S>()
@@ -240,9 +274,9 @@ private class MethodClassTaintRulesStorage<S : SerializedRule> private construct
         private val concreteClassRules = hashMapOf<String, MutableSet<S>>()
 
         private val concreteClassNameAnyPackageRules = hashMapOf<String, MutableSet<S>>()
-        private val concreteClassPackagePatternRules = hashMapOf<String, MutableMap<Regex, MutableSet<S>>>()
-        private val concretePackageClassPatternRules = hashMapOf<String, MutableMap<Regex, MutableSet<S>>>()
-        private val classPatternPackagePatternRules = hashMapOf<Regex, MutableMap<Regex, MutableSet<S>>>()
+        private val concreteClassPackagePatternRules = hashMapOf<String, MutableMap<PatternMatcher, MutableSet<S>>>()
+        private val concretePackageClassPatternRules = hashMapOf<String, MutableMap<PatternMatcher, MutableSet<S>>>()
+        private val classPatternPackagePatternRules = hashMapOf<Regex, MutableMap<PatternMatcher, MutableSet<S>>>()
 
         fun build(): MethodClassTaintRulesStorage<S>? {
             if (rules.isEmpty()) return null
@@ -280,19 +314,22 @@ private class MethodClassTaintRulesStorage<S : SerializedRule> private construct
                 concretePackageClassPatternRules.mapValuesTo(hashMapOf()) { (_, clsRules) ->
                     clsRules.entries.map { it.key to it.value.toRuleArray() }.toTypedArray()
                 },
-                classPatternPackagePatternRules.map { (clsPattern, pkgRules) ->
-                    clsPattern to pkgRules.entries.map { it.key to it.value.toRuleArray() }.toTypedArray()
-                }.toTypedArray()
+                MultiPatternMatcher.build(
+                    classPatternPackagePatternRules.map { (clsPattern, pkgRules) ->
+                        clsPattern to pkgRules.entries.map { it.key to it.value.toRuleArray() }.toTypedArray()
+                    },
+                    fullMatch = true
+                )
             )
 
-            val resultConcreteRules = hashMapOf<String, MutableSet<S>>()
+            val resultConcreteRules = ConcurrentHashMap<String, MutableSet<S>>()
             for ((className, classRules) in concreteClassRules) {
                 resolveClassNamePattern(patterns, className, classRules)
-                resultConcreteRules[className] = classRules
+                resultConcreteRules.classRules(className).addAll(classRules)
             }
 
             return MethodClassTaintRulesStorage(
-                hierarchyInfo,
+                hierarchy, caches,
                 concreteMethodName, patterns,
                 anyRules.toRuleArray(), resultConcreteRules
             )
@@ -305,7 +342,7 @@ private class MethodClassTaintRulesStorage<S : SerializedRule> private construct
             }
 
             val clsPattern = patternManager.compilePattern(cls.pattern)
-            val pkgPattern = patternManager.compilePattern(pkg.pattern)
+            val pkgPattern = patternManager.fullPatternMatcher(pkg.pattern)
 
             classPatternPackagePatternRules
                 .getOrPut(clsPattern, ::hashMapOf)
@@ -319,7 +356,7 @@ private class MethodClassTaintRulesStorage<S : SerializedRule> private construct
                 return
             }
 
-            val pkgPattern = patternManager.compilePattern(pkg.pattern)
+            val pkgPattern = patternManager.fullPatternMatcher(pkg.pattern)
             concreteClassPackagePatternRules
                 .getOrPut(cls, ::hashMapOf)
                 .getOrPut(pkgPattern, ::hashSetOf)
@@ -327,7 +364,7 @@ private class MethodClassTaintRulesStorage<S : SerializedRule> private construct
         }
 
         private fun addConcretePackagePatternClassRule(pkg: String, cls: Pattern, rule: S) {
-            val clsPattern = patternManager.compilePattern(cls.pattern)
+            val clsPattern = patternManager.fullPatternMatcher(cls.pattern)
             concretePackageClassPatternRules
                 .getOrPut(pkg, ::hashMapOf)
                 .getOrPut(clsPattern, ::hashSetOf)
@@ -340,6 +377,9 @@ private class MethodClassTaintRulesStorage<S : SerializedRule> private construct
     }
 
     companion object {
+        private fun <S : SerializedRule> ConcurrentHashMap<String, MutableSet<S>>.classRules(className: String) =
+            computeIfAbsent(className) { ConcurrentHashMap.newKeySet() }
+
         private fun <S : SerializedRule> Collection<S>.toRuleArray(): Array<S> {
             @Suppress("UNCHECKED_CAST")
             return toTypedArray<SerializedRule>() as Array<S>
@@ -354,21 +394,20 @@ private class MethodClassTaintRulesStorage<S : SerializedRule> private construct
             patterns.concreteClassNameAnyPackageRules[simpleName]?.forEach { classRules.add(it) }
 
             patterns.concreteClassPackagePatternRules[simpleName]?.forEach { (pkgPattern, rules) ->
-                if (pkgPattern.matches(pkgName)) {
+                if (pkgPattern.match(pkgName)) {
                     rules.forEach { classRules.add(it) }
                 }
             }
 
             patterns.concretePackageClassPatternRules[pkgName]?.forEach { (clsPattern, rules) ->
-                if (clsPattern.matches(simpleName)) {
+                if (clsPattern.match(simpleName)) {
                     rules.forEach { classRules.add(it) }
                 }
             }
 
-            for ((clsPattern, pkgRules) in patterns.classPatternPackagePatternRules) {
-                if (!clsPattern.matches(simpleName)) continue
+            patterns.classPatternPackagePatternRules.forEachMatch(simpleName) { pkgRules ->
                 for ((pkg, rules) in pkgRules) {
-                    if (!pkg.matches(pkgName)) continue
+                    if (!pkg.match(pkgName)) continue
                     rules.forEach { classRules.add(it) }
                 }
             }
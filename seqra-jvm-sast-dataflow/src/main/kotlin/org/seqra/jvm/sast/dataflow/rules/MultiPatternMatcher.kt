@@ -0,0 +1,294 @@
+package org.seqra.jvm.sast.dataflow.rules
+
+import java.util.BitSet
+
+/**
+ * Matches a string against many patterns at once.
+ *
+ * For every pattern we extract a literal that must occur in every matched string.
+ * All literals are indexed with Aho-Corasick automaton, so a single pass over the string
+ * finds candidate patterns. Only candidates (and patterns without literal) are checked with their [PatternMatcher].
+ * */
+class MultiPatternMatcher<T> private constructor(
+    private val patterns: Array<PatternMatcher>,
+    private val values: Array<Any?>,
+    private val patternsWithoutLiteral: BitSet,
+    private val literalIndex: LiteralIndex,
+) {
+    val isEmpty: Boolean get() = patterns.isEmpty()
+
+    inline fun forEachMatch(str: String, body: (T) -> Unit) {
+        if (isEmpty) return
+
+        val candidates = findCandidates(str)
+        var idx = candidates.nextSetBit(0)
+        while (idx >= 0) {
+            if (patternMatches(idx, str)) {
+                body(value(idx))
+            }
+            idx = candidates.nextSetBit(idx + 1)
+        }
+    }
+
+    @PublishedApi
+    internal fun findCandidates(str: String): BitSet {
+        val candidates = patternsWithoutLiteral.clone() as BitSet
+        literalIndex.collectOccurrences(str, candidates)
+        return candidates
+    }
+
+    @PublishedApi
+    internal fun patternMatches(idx: Int, str: String): Boolean = patterns[idx].match(str)
+
+    @PublishedApi
+    @Suppress("UNCHECKED_CAST")
+    internal fun value(idx: Int): T = values[idx] as T
+
+    private class LiteralIndex(
+        private val transitions: Array<HashMap<Char, Int>>,
+        private val fail: IntArray,
+        private val output: Array<IntArray>,
+    ) {
+        fun collectOccurrences(str: String, dst: BitSet) {
+            if (output.size == 1) return
+
+            var state = ROOT
+            for (c in str) {
+                state = next(state, c)
+                for (patternIdx in output[state]) {
+                    dst.set(patternIdx)
+                }
+            }
+        }
+
+        private fun next(state: Int, c: Char): Int {
+            var current = state
+            while (true) {
+                transitions[current][c]?.let { return it }
+                if (current == ROOT) return ROOT
+                current = fail[current]
+            }
+        }
+
+        companion object {
+            const val ROOT = 0
+
+            fun build(literals: List<Pair<String, Int>>): LiteralIndex {
+                val transitions = arrayListOf(hashMapOf<Char, Int>())
+                val nodeOutput = arrayListOf(mutableListOf<Int>())
+
+                for ((literal, patternIdx) in literals) {
+                    var state = ROOT
+                    for (c in literal) {
+                        state = transitions[state].getOrPut(c) {
+                            transitions.add(hashMapOf())
+                            nodeOutput.add(mutableListOf())
+                            transitions.lastIndex
+                        }
+                    }
+                    nodeOutput[state].add(patternIdx)
+                }
+
+                val fail = IntArray(transitions.size)
+                val queue = ArrayDeque<Int>()
+                for (child in transitions[ROOT].values) {
+                    fail[child] = ROOT
+                    queue.add(child)
+                }
+
+                while (queue.isNotEmpty()) {
+                    val state = queue.removeFirst()
+                    for ((c, child) in transitions[state]) {
+                        queue.add(child)
+
+                        var f = fail[state]
+                        while (f != ROOT && c !in transitions[f]) {
+                            f = fail[f]
+                        }
+
+                        val childFail = transitions[f][c] ?: ROOT
+                        fail[child] = childFail
+                        nodeOutput[child].addAll(nodeOutput[childFail])
+                    }
+                }
+
+                return LiteralIndex(
+                    transitions.toTypedArray(),
+                    fail,
+                    Array(nodeOutput.size) { nodeOutput[it].toIntArray() }
+                )
+            }
+        }
+    }
+
+    companion object {
+        fun <T> build(patterns: List<Pair<Regex, T>>, fullMatch: Boolean): MultiPatternMatcher<T> {
+            val patternsWithoutLiteral = BitSet()
+            val literals = mutableListOf<Pair<String, Int>>()
+
+            patterns.forEachIndexed { idx, (pattern, _) ->
+                val literal = requiredLiteral(pattern.pattern)
+                if (literal == null) {
+                    patternsWithoutLiteral.set(idx)
+                } else {
+                    literals += literal to idx
+                }
+            }
+
+            return MultiPatternMatcher(
+                patterns.map { PatternMatcher.create(it.first, fullMatch) }.toTypedArray(),
+                Array(patterns.size) { patterns[it].second },
+                patternsWithoutLiteral,
+                LiteralIndex.build(literals)
+            )
+        }
+
+        // Longest literal that occurs in every string matched by the pattern, or null if there is no such literal
+        fun requiredLiteral(pattern: String): String? {
+            if ("(?" in pattern || "\\Q" in pattern) return null
+
+            val segments = mutableListOf<String>()
+            val current = StringBuilder()
+            var lastAtomIsLiteral = false
+
+            fun closeSegment() {
+                if (current.isNotEmpty()) {
+                    segments += current.toString()
+                    current.clear()
+                }
+                lastAtomIsLiteral = false
+            }
+
+            fun dropLastLiteral() {
+                if (lastAtomIsLiteral) {
+                    current.setLength(current.length - 1)
+                }
+                closeSegment()
+            }
+
+            var idx = 0
+            while (idx < pattern.length) {
+                when (val c = pattern[idx]) {
+                    '\\' -> {
+                        val escaped = pattern.getOrNull(idx + 1) ?: return null
+                        if (escaped.isLetterOrDigit()) {
+                            closeSegment()
+                            idx += 1 + (escapeLength(pattern, idx + 1) ?: return null)
+                        } else {
+                            current.append(escaped)
+                            lastAtomIsLiteral = true
+                            idx += 2
+                        }
+                        continue
+                    }
+
+                    '|' -> return null
+
+                    '*', '?' -> dropLastLiteral()
+
+                    '{' -> {
+                        dropLastLiteral()
+                        idx = pattern.indexOf('}', idx)
+                        if (idx < 0) return null
+                    }
+
+                    '+' -> closeSegment()
+
+                    '(' -> {
+                        closeSegment()
+                        idx = skipGroup(pattern, idx) ?: return null
+                    }
+
+                    '[' -> {
+                        closeSegment()
+                        idx = skipCharClass(pattern, idx) ?: return null
+                    }
+
+                    '.', '^', '$' -> closeSegment()
+
+                    ')', ']', '}' -> return null
+
+                    else -> {
+                        current.append(c)
+                        lastAtomIsLiteral = true
+                    }
+                }
+                idx++
+            }
+            closeSegment()
+
+            return segments.maxByOrNull { it.length }
+        }
+
+        // Length of the alphanumeric escape starting at [start] (after the backslash), or null if it is not supported
+        private fun escapeLength(pattern: String, start: Int): Int? = when (pattern[start]) {
+            'x' -> if (pattern.getOrNull(start + 1) == '{') bracedLength(pattern, start, '}') else 3
+            'u' -> 5
+            'c' -> 2
+            'p', 'P' -> if (pattern.getOrNull(start + 1) == '{') bracedLength(pattern, start, '}') else 2
+            'N' -> bracedLength(pattern, start, '}')
+            'k' -> bracedLength(pattern, start, '>')
+            '0' -> 1 + octalEscapeDigits(pattern, start + 1)
+
+            // Number of back reference digits depends on the number of groups
+            in '1'..'9' -> null
+
+            else -> 1
+        }?.takeIf { start + it <= pattern.length }
+
+        private fun bracedLength(pattern: String, start: Int, close: Char): Int? {
+            val end = pattern.indexOf(close, start)
+            if (end < 0) return null
+            return end - start + 1
+        }
+
+        // Octal escape is \0n, \0nn or \0mnn where m <= 3
+        private fun octalEscapeDigits(pattern: String, start: Int): Int {
+            var digits = 0
+            while (digits < 3 && pattern.getOrNull(start + digits)?.let { it in '0'..'7' } == true) {
+                digits++
+            }
+
+            if (digits == 3 && pattern[start] > '3') digits = 2
+            return digits
+        }
+
+        private fun skipGroup(pattern: String, start: Int): Int? {
+            var depth = 0
+            var idx = start
+            while (idx < pattern.length) {
+                when (pattern[idx]) {
+                    '\\' -> idx++
+                    '[' -> idx = skipCharClass(pattern, idx) ?: return null
+                    '(' -> depth++
+                    ')' -> {
+                        depth--
+                        if (depth == 0) return idx
+                    }
+                }
+                idx++
+            }
+            return null
+        }
+
+        private fun skipCharClass(pattern: String, start: Int): Int? {
+            var idx = start + 1
+            if (pattern.getOrNull(idx) == '^') idx++
+            if (pattern.getOrNull(idx) == ']') idx++
+
+            var depth = 1
+            while (idx < pattern.length) {
+                when (pattern[idx]) {
+                    '\\' -> idx++
+                    '[' -> depth++
+                    ']' -> {
+                        depth--
+                        if (depth == 0) return idx
+                    }
+                }
+                idx++
+            }
+            return null
+        }
+    }
+}
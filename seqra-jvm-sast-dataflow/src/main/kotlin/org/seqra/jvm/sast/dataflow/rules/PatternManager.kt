@@ -1,11 +1,25 @@
 package org.seqra.jvm.sast.dataflow.rules
 
+import java.util.concurrent.ConcurrentHashMap
+
 class PatternManager {
-    private val compiledMatchers = hashMapOf<String, Regex>()
+    private val compiledMatchers = ConcurrentHashMap<String, Regex>()
+    private val patternMatchers = ConcurrentHashMap<String, PatternMatcher>()
+    private val fullPatternMatchers = ConcurrentHashMap<String, PatternMatcher>()
 
     fun compilePattern(pattern: String): Regex =
-        compiledMatchers.getOrPut(pattern) { pattern.toRegex() }
+        compiledMatchers.computeIfAbsent(pattern) { it.toRegex() }
+
+    fun patternMatcher(pattern: String): PatternMatcher =
+        patternMatchers.computeIfAbsent(pattern) {
+            createSimplePatternMatcher(it) ?: PatternMatcher.RegexMatcher(compilePattern(it), fullMatch = false)
+        }
+
+    fun fullPatternMatcher(pattern: String): PatternMatcher =
+        fullPatternMatchers.computeIfAbsent(pattern) {
+            createSimpleFullPatternMatcher(it) ?: PatternMatcher.RegexMatcher(compilePattern(it), fullMatch = true)
+        }
 
     fun matchPattern(pattern: String, str: String): Boolean =
-        compilePattern(pattern).containsMatchIn(str)
+        patternMatcher(pattern).match(str)
 }
@@ -0,0 +1,228 @@
+package org.seqra.jvm.sast.dataflow.rules
+
+/**
+ * Specialized form of [Regex.containsMatchIn] or [Regex.matches] for a single pattern.
+ * Most of the rule patterns are literals, prefixes, suffixes, or literal enumerations,
+ * and they are matched without regex engine.
+ *
+ * Anchored literals are compared with the whole string, so unlike the regex `$`
+ * they don't match before a trailing line terminator. Names never contain line terminators.
+ * */
+sealed interface PatternMatcher {
+    fun match(str: String): Boolean
+
+    class Contains(private val literal: String) : PatternMatcher {
+        override fun match(str: String): Boolean = str.contains(literal)
+    }
+
+    class Equals(val literal: String) : PatternMatcher {
+        override fun match(str: String): Boolean = str == literal
+    }
+
+    class StartsWith(val prefix: String) : PatternMatcher {
+        override fun match(str: String): Boolean = str.startsWith(prefix)
+    }
+
+    class EndsWith(val suffix: String) : PatternMatcher {
+        override fun match(str: String): Boolean = str.endsWith(suffix)
+    }
+
+    class EqualsAny(private val literals: Set<String>) : PatternMatcher {
+        override fun match(str: String): Boolean = str in literals
+    }
+
+    class AnyOf(private val matchers: Array<PatternMatcher>) : PatternMatcher {
+        override fun match(str: String): Boolean = matchers.any { it.match(str) }
+    }
+
+    class RegexMatcher(private val regex: Regex, private val fullMatch: Boolean) : PatternMatcher {
+        override fun match(str: String): Boolean =
+            if (fullMatch) regex.matches(str) else regex.containsMatchIn(str)
+    }
+
+    data object AnyString : PatternMatcher {
+        override fun match(str: String): Boolean = true
+    }
+
+    companion object {
+        fun create(regex: Regex, fullMatch: Boolean): PatternMatcher {
+            val simpleMatcher = if (fullMatch) {
+                createSimpleFullPatternMatcher(regex.pattern)
+            } else {
+                createSimplePatternMatcher(regex.pattern)
+            }
+            return simpleMatcher ?: RegexMatcher(regex, fullMatch)
+        }
+    }
+}
+
+// Same as [Regex.matches]: every top level alternative must match the whole string
+internal fun createSimpleFullPatternMatcher(pattern: String): PatternMatcher? {
+    val alternatives = splitTopLevelAlternatives(pattern) ?: return null
+    return mkAnyOf(alternatives.map { createSimplePatternMatcher("^$it$") ?: return null })
+}
+
+internal fun createSimplePatternMatcher(pattern: String): PatternMatcher? {
+    val alternatives = splitTopLevelAlternatives(pattern) ?: return null
+    if (alternatives.size > 1) {
+        val matchers = alternatives.map { createSimplePatternMatcher(it) ?: return null }
+        return mkAnyOf(matchers)
+    }
+
+    var body = pattern
+    var startAnchor = false
+    var endAnchor = false
+
+    if (body.startsWith("^")) {
+        body = body.substring(1)
+        startAnchor = true
+    }
+
+    if (body.endsWith("$") && !body.isEscaped(body.lastIndex)) {
+        body = body.substring(0, body.lastIndex)
+        endAnchor = true
+    }
+
+    if (body.startsWith(ANY_STRING)) {
+        body = body.substring(ANY_STRING.length)
+        startAnchor = false
+    }
+
+    for (anySuffix in ANY_STRING_SUFFIXES) {
+        if (body.endsWith(anySuffix) && !body.isEscaped(body.length - anySuffix.length)) {
+            body = body.substring(0, body.length - anySuffix.length)
+            endAnchor = false
+            break
+        }
+    }
+
+    val group = unwrapGroup(body)
+    val literals = if (group != null) {
+        val groupAlternatives = splitTopLevelAlternatives(group) ?: return null
+        groupAlternatives.map { tryConcretizePattern(it) ?: return null }
+    } else {
+        listOf(tryConcretizePattern(body) ?: return null)
+    }
+
+    if (startAnchor && endAnchor && literals.size > 1) {
+        return PatternMatcher.EqualsAny(literals.toHashSet())
+    }
+
+    return mkAnyOf(literals.map { literalMatcher(it, startAnchor, endAnchor) })
+}
+
+/**
+ * Unescaped pattern if it contains no regex constructs.
+ * Any character except the regex meta characters is a literal, e.g. `_`, `-` or `<init>`.
+ * Escaped letters and digits are regex constructs (`\d`, `\x41`), so such patterns are rejected.
+ * */
+internal fun tryConcretizePattern(pattern: String): String? {
+    val unescapedStr = StringBuilder()
+
+    var idx = 0
+    while (idx < pattern.length) {
+        val c = pattern[idx]
+        if (c == '\\') {
+            val escaped = pattern.getOrNull(idx + 1) ?: return null
+            if (escaped.isLetterOrDigit()) return null
+
+            unescapedStr.append(escaped)
+            idx += 2
+            continue
+        }
+
+        if (c in REGEX_META_CHARS) return null
+
+        unescapedStr.append(c)
+        idx++
+    }
+
+    return unescapedStr.toString()
+}
+
+private fun literalMatcher(literal: String, startAnchor: Boolean, endAnchor: Boolean): PatternMatcher = when {
+    startAnchor && endAnchor -> PatternMatcher.Equals(literal)
+    literal.isEmpty() -> PatternMatcher.AnyString
+    startAnchor -> PatternMatcher.StartsWith(literal)
+    endAnchor -> PatternMatcher.EndsWith(literal)
+    else -> PatternMatcher.Contains(literal)
+}
+
+private fun mkAnyOf(matchers: List<PatternMatcher>): PatternMatcher {
+    matchers.singleOrNull()?.let { return it }
+
+    if (matchers.any { it is PatternMatcher.AnyString }) return PatternMatcher.AnyString
+
+    if (matchers.all { it is PatternMatcher.Equals }) {
+        return PatternMatcher.EqualsAny(matchers.mapTo(hashSetOf()) { (it as PatternMatcher.Equals).literal })
+    }
+
+    return PatternMatcher.AnyOf(matchers.toTypedArray())
+}
+
+private fun unwrapGroup(pattern: String): String? {
+    if (!pattern.startsWith("(") || !pattern.endsWith(")")) return null
+
+    val body = if (pattern.startsWith("(?:")) {
+        pattern.substring(3, pattern.lastIndex)
+    } else {
+        pattern.substring(1, pattern.lastIndex)
+    }
+
+    if (body.startsWith("?")) return null
+
+    // check that the first bracket is closed with the last one
+    var depth = 0
+    for ((idx, c) in body.withIndex()) {
+        if (body.isEscaped(idx)) continue
+        when (c) {
+            '(' -> depth++
+            ')' -> if (--depth < 0) return null
+        }
+    }
+
+    return body.takeIf { depth == 0 }
+}
+
+private fun splitTopLevelAlternatives(pattern: String): List<String>? {
+    val result = mutableListOf<String>()
+    var depth = 0
+    var inCharClass = false
+    var start = 0
+
+    var idx = 0
+    while (idx < pattern.length) {
+        val c = pattern[idx]
+        when {
+            c == '\\' -> idx++
+            inCharClass -> if (c == ']') inCharClass = false
+            c == '[' -> inCharClass = true
+            c == '(' -> depth++
+            c == ')' -> if (--depth < 0) return null
+            c == '|' && depth == 0 -> {
+                result += pattern.substring(start, idx)
+                start = idx + 1
+            }
+        }
+        idx++
+    }
+
+    if (depth != 0 || inCharClass) return null
+
+    result += pattern.substring(start)
+    return result
+}
+
+private fun String.isEscaped(idx: Int): Boolean {
+    var backslashes = 0
+    var i = idx - 1
+    while (i >= 0 && this[i] == '\\') {
+        backslashes++
+        i--
+    }
+    return backslashes % 2 == 1
+}
+
+private const val ANY_STRING = ".*"
+private val ANY_STRING_SUFFIXES = arrayOf(".*", "(.)*")
+private const val REGEX_META_CHARS = "\\^$.|?*+()[]{}"
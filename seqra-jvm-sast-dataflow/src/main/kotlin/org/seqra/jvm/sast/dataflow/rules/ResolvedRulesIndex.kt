@@ -0,0 +1,293 @@
+package org.seqra.jvm.sast.dataflow.rules
+
+import mu.KLogging
+import org.seqra.ir.api.jvm.JIRClassOrInterface
+import org.seqra.ir.api.jvm.JIRClasspath
+import org.seqra.ir.api.jvm.JIRMethod
+import org.seqra.ir.api.jvm.RegisteredLocation
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.io.path.Path
+import kotlin.io.path.createDirectories
+import kotlin.io.path.createTempFile
+import kotlin.io.path.deleteIfExists
+import kotlin.io.path.div
+import kotlin.io.path.exists
+import kotlin.io.path.fileSize
+import kotlin.io.path.getLastModifiedTime
+import kotlin.io.path.inputStream
+import kotlin.io.path.isDirectory
+import kotlin.io.path.isRegularFile
+import kotlin.io.path.moveTo
+import kotlin.io.path.outputStream
+import kotlin.io.path.toPath
+import kotlin.io.path.walk
+
+/**
+ * Persistent index of the methods without resolved rules.
+ *
+ * Index is stored per rule configuration, and entries of every location are keyed by the location content hash.
+ * So a classpath change invalidates only the entries of the changed locations.
+ * Content hash is recomputed only when the location size or modification time stamp changes.
+ * Method entry is reused only if the locations of the method class and its super classes are unchanged,
+ * and no subclass is located in a changed location.
+ * Entries of the locations which are not in the current classpath are kept for the other classpaths.
+ *
+ * Only empty resolutions are stored. Methods with rules are always resolved,
+ * because resolved items reference the classpath and are not serializable.
+ * */
+class ResolvedRulesIndex private constructor(
+    private val cp: JIRClasspath,
+    private val indexFile: Path,
+    private val locations: Map<String, LocationVersion>,
+    private val storedEntries: Map<String, Map<String, Int>>,
+    private val otherLocations: Map<String, StoredLocation>,
+) {
+    private class LocationVersion(val stamp: String, val hash: String)
+
+    private class StoredLocation(val version: LocationVersion, val methods: Map<String, Int>)
+
+    private val changedLocations: Set<String> = locations.keys - storedEntries.keys
+
+    private val resolvedEntries = ConcurrentHashMap<String, ConcurrentHashMap<String, Int>>()
+    private val unchangedHierarchy = ConcurrentHashMap<String, Boolean>()
+
+    fun isKnownEmpty(kind: TaintRuleKind, method: JIRMethod, hierarchy: ClassHierarchyClosure): Boolean {
+        val location = method.enclosingClass.locationPath() ?: return false
+        val emptyKinds = storedEntries[location]?.get(method.indexKey()) ?: return false
+        if (emptyKinds and kind.mask == 0) return false
+
+        if (!method.enclosingClass.hierarchyUnchanged(hierarchy)) return false
+
+        recordEmpty(kind, method)
+        return true
+    }
+
+    fun recordEmpty(kind: TaintRuleKind, method: JIRMethod) {
+        val location = method.enclosingClass.locationPath() ?: return
+        resolvedEntries.computeIfAbsent(location) { ConcurrentHashMap() }
+            .merge(method.indexKey(), kind.mask, Int::or)
+    }
+
+    fun save() {
+        val entries = hashMapOf<String, MutableMap<String, Int>>()
+
+        // Entries are validated on lookup. Without changes all of them remain valid
+        if (changedLocations.isEmpty()) {
+            storedEntries.mapValuesTo(entries) { (_, methods) -> methods.toMutableMap() }
+        }
+
+        for ((location, methods) in resolvedEntries) {
+            val locationEntries = entries.getOrPut(location, ::hashMapOf)
+            for ((method, emptyKinds) in methods) {
+                locationEntries.merge(method, emptyKinds, Int::or)
+            }
+        }
+
+        runCatching {
+            writeIndex(entries)
+        }.onFailure { ex ->
+            logger.warn(ex) { "Failed to save resolved rules index to $indexFile" }
+        }
+    }
+
+    private fun writeIndex(entries: Map<String, Map<String, Int>>) {
+        indexFile.parent?.createDirectories()
+
+        // Unique temporary file, so concurrent runs never write the same file
+        val tmpFile = createTempFile(indexFile.parent, indexFile.fileName.toString(), ".tmp")
+        try {
+            DataOutputStream(tmpFile.outputStream().buffered()).use { out ->
+                out.writeInt(INDEX_VERSION)
+                out.writeUTF(analyzerVersion)
+                out.writeInt(locations.size + otherLocations.size)
+                for ((location, version) in locations) {
+                    out.writeLocation(location, version, entries[location].orEmpty())
+                }
+                for ((location, stored) in otherLocations) {
+                    out.writeLocation(location, stored.version, stored.methods)
+                }
+            }
+
+            tmpFile.moveTo(indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        } finally {
+            tmpFile.deleteIfExists()
+        }
+
+        logger.info { "Resolved rules index saved to $indexFile" }
+    }
+
+    private fun DataOutputStream.writeLocation(location: String, version: LocationVersion, methods: Map<String, Int>) {
+        writeUTF(location)
+        writeUTF(version.stamp)
+        writeUTF(version.hash)
+        writeInt(methods.size)
+        for ((method, emptyKinds) in methods) {
+            writeUTF(method)
+            writeInt(emptyKinds)
+        }
+    }
+
+    private fun JIRClassOrInterface.locationPath(): String? =
+        declaration.location.path.takeIf { it in locations }
+
+    private fun JIRClassOrInterface.locationUnchanged(): Boolean =
+        locationUnchanged(declaration.location.path)
+
+    private fun locationUnchanged(location: String): Boolean =
+        location in locations && location !in changedLocations
+
+    private fun JIRClassOrInterface.hierarchyUnchanged(hierarchy: ClassHierarchyClosure): Boolean =
+        unchangedHierarchy.computeIfAbsent(name) {
+            if (!hierarchy.superClasses(this).all { locationUnchanged(it.locationPath) }) return@computeIfAbsent false
+            if (changedLocations.isEmpty()) return@computeIfAbsent true
+
+            var unchanged = true
+            hierarchy.forEachSubClassName(name) { subClassName ->
+                if (unchanged) {
+                    unchanged = cp.findClassOrNull(subClassName)?.locationUnchanged() ?: false
+                }
+            }
+            unchanged
+        }
+
+    private fun JIRMethod.indexKey(): String = "${enclosingClass.name}#$name$description"
+
+    companion object {
+        private val logger = object : KLogging() {}.logger
+
+        private const val INDEX_VERSION = 2
+        private const val HASH_BUFFER_SIZE = 1 shl 16
+
+        // Development builds have no version, so they are identified by the analyzer classes content
+        private val analyzerVersion: String by lazy {
+            ResolvedRulesIndex::class.java.`package`?.implementationVersion
+                ?: ResolvedRulesIndex::class.java.protectionDomain.codeSource?.location?.toURI()?.toPath()
+                    ?.let { "dev-${contentHash(listOf(it))}" }
+                ?: "dev"
+        }
+
+        fun load(indexDir: Path, configHash: String, cp: JIRClasspath): ResolvedRulesIndex {
+            val indexFile = indexDir / "$configHash.idx"
+
+            val storedLocations = if (!indexFile.exists()) {
+                emptyMap()
+            } else {
+                runCatching {
+                    readIndex(indexFile)
+                }.onFailure { ex ->
+                    logger.warn(ex) { "Failed to read resolved rules index from $indexFile" }
+                }.getOrDefault(emptyMap())
+            }
+
+            val locations = cp.registeredLocations.associate { location ->
+                location.path to location.version(storedLocations[location.path]?.version)
+            }
+
+            val storedEntries = storedLocations
+                .filter { (location, stored) -> locations[location]?.hash == stored.version.hash }
+                .mapValues { it.value.methods }
+
+            val reusedMethods = storedEntries.values.sumOf { it.size }
+            logger.info {
+                "Resolved rules index: ${storedEntries.size}/${locations.size} unchanged locations, $reusedMethods methods"
+            }
+
+            val otherLocations = storedLocations.filterKeys { it !in locations }
+
+            return ResolvedRulesIndex(cp, indexFile, locations, storedEntries, otherLocations)
+        }
+
+        private fun readIndex(indexFile: Path): Map<String, StoredLocation> =
+            DataInputStream(indexFile.inputStream().buffered()).use { input ->
+                if (input.readInt() != INDEX_VERSION) return emptyMap()
+                if (input.readUTF() != analyzerVersion) return emptyMap()
+
+                val result = hashMapOf<String, StoredLocation>()
+                repeat(input.readInt()) {
+                    val location = input.readUTF()
+                    val version = LocationVersion(stamp = input.readUTF(), hash = input.readUTF())
+
+                    val methods = hashMapOf<String, Int>()
+                    repeat(input.readInt()) {
+                        methods[input.readUTF()] = input.readInt()
+                    }
+
+                    result[location] = StoredLocation(version, methods)
+                }
+                result
+            }
+
+        private fun RegisteredLocation.version(stored: LocationVersion?): LocationVersion {
+            val locationPath = Path(path)
+
+            // Runtime is large and changes only with the JDK update
+            if (isRuntime) {
+                val runtimeVersion = "runtime-${locationPath.getLastModifiedTime().toMillis()}"
+                return LocationVersion(runtimeVersion, runtimeVersion)
+            }
+
+            val stamp = locationStamp(locationPath)
+            if (stored != null && stored.stamp == stamp) return stored
+
+            return LocationVersion(stamp, contentHash(listOf(locationPath)))
+        }
+
+        // Cheap location version: sizes and modification times of the location files
+        private fun locationStamp(path: Path): String = when {
+            path.isDirectory() -> {
+                val files = path.walk().filter { it.isRegularFile() }.map { file ->
+                    "${path.relativize(file)}:${file.fileSize()}:${file.getLastModifiedTime().toMillis()}"
+                }
+                valuesHash(files.sorted().toList())
+            }
+
+            path.exists() -> "${path.fileSize()}:${path.getLastModifiedTime().toMillis()}"
+            else -> "missing"
+        }
+
+        fun valuesHash(values: List<String>): String {
+            val digest = MessageDigest.getInstance("SHA-256")
+            for (value in values) {
+                digest.update(value.toByteArray())
+                digest.update(0)
+            }
+            return digest.digest().joinToString("") { "%02x".format(it) }
+        }
+
+        fun contentHash(paths: List<Path>): String {
+            val digest = MessageDigest.getInstance("SHA-256")
+            val buffer = ByteArray(HASH_BUFFER_SIZE)
+
+            fun updateWithFile(file: Path) {
+                file.inputStream().use { stream ->
+                    while (true) {
+                        val read = stream.read(buffer)
+                        if (read < 0) break
+                        digest.update(buffer, 0, read)
+                    }
+                }
+            }
+
+            for (path in paths) {
+                when {
+                    path.isDirectory() -> {
+                        val files = path.walk().filter { it.isRegularFile() }.sortedBy { path.relativize(it).toString() }
+                        for (file in files) {
+                            digest.update(path.relativize(file).toString().toByteArray())
+                            updateWithFile(file)
+                        }
+                    }
+
+                    path.exists() -> updateWithFile(path)
+                }
+            }
+
+            return digest.digest().joinToString("") { "%02x".format(it) }
+        }
+    }
+}
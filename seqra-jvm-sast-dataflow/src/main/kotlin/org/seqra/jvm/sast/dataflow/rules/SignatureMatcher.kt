@@ -0,0 +1,80 @@
+package org.seqra.jvm.sast.dataflow.rules
+
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher.ClassPattern
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher.Pattern
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher.Simple
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedSignatureMatcher
+import org.seqra.ir.api.jvm.JIRMethod
+
+/**
+ * Compiled [SerializedSignatureMatcher].
+ * Signature match depends only on the erased parameter and return types,
+ * so the result is shared by all methods with the same descriptor.
+ * */
+class SignatureMatcher(
+    signature: SerializedSignatureMatcher,
+    patternManager: PatternManager,
+    private val descriptorMatches: BoundedCache<String, Boolean>,
+) {
+    private val predicate = signature.compile(patternManager)
+
+    fun match(method: JIRMethod): Boolean =
+        descriptorMatches.getOrResolve(method.description) { predicate(method) }
+
+    private class ParamMatcher(val index: Int, val type: (String) -> Boolean)
+
+    companion object {
+        private val anyName: (String) -> Boolean = { true }
+
+        private fun SerializedSignatureMatcher.compile(patternManager: PatternManager): (JIRMethod) -> Boolean =
+            when (this) {
+                is SerializedSignatureMatcher.Simple -> simpleSignatureMatcher(
+                    `return`.compile(patternManager),
+                    args.map { it.compile(patternManager) }.toTypedArray()
+                )
+
+                is SerializedSignatureMatcher.Partial -> partialSignatureMatcher(
+                    `return`?.compile(patternManager),
+                    params.orEmpty().map { ParamMatcher(it.index, it.type.compile(patternManager)) }.toTypedArray()
+                )
+            }
+
+        private fun simpleSignatureMatcher(
+            returnMatcher: (String) -> Boolean,
+            argMatchers: Array<(String) -> Boolean>,
+        ): (JIRMethod) -> Boolean = matcher@{ method ->
+            val params = method.parameters
+            if (params.size != argMatchers.size) return@matcher false
+            if (!returnMatcher(method.returnType.typeName)) return@matcher false
+
+            argMatchers.indices.all { argMatchers[it](params[it].type.typeName) }
+        }
+
+        private fun partialSignatureMatcher(
+            returnMatcher: ((String) -> Boolean)?,
+            paramMatchers: Array<ParamMatcher>,
+        ): (JIRMethod) -> Boolean = matcher@{ method ->
+            if (returnMatcher != null && !returnMatcher(method.returnType.typeName)) return@matcher false
+
+            paramMatchers.all { param ->
+                val methodParam = method.parameters.getOrNull(param.index) ?: return@all false
+                param.type(methodParam.type.typeName)
+            }
+        }
+
+        private fun SerializedNameMatcher.compile(patternManager: PatternManager): (String) -> Boolean = when (this) {
+            is Simple -> if (value == "*") anyName else value::equals
+            is Pattern -> if (isAny()) anyName else patternManager.patternMatcher(pattern)::match
+            is ClassPattern -> classNameMatcher(`package`.compile(patternManager), `class`.compile(patternManager))
+        }
+
+        private fun classNameMatcher(
+            pkgMatcher: (String) -> Boolean,
+            clsMatcher: (String) -> Boolean,
+        ): (String) -> Boolean = { name ->
+            val (pkgName, clsName) = splitClassName(name)
+            pkgMatcher(pkgName) && clsMatcher(clsName)
+        }
+    }
+}
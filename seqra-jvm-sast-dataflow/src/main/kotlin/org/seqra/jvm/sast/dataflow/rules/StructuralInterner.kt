@@ -0,0 +1,39 @@
+package org.seqra.jvm.sast.dataflow.rules
+
+import java.lang.ref.WeakReference
+import java.util.WeakHashMap
+
+/**
+ * Shares structurally equal values.
+ * Rules with broad method matchers are resolved into identical conditions, positions and actions
+ * for many methods, and resolved items keep only one copy of them.
+ *
+ * Values are weakly referenced: a value is kept only while some resolved rule uses it,
+ * so values of evicted rules are reclaimed with the rules.
+ * */
+class StructuralInterner {
+    private val stripes = Array(STRIPES) { WeakHashMap<Any, WeakReference<Any>>() }
+
+    fun <T : Any> intern(value: T): T {
+        val stripe = stripes[(value.hashCode() ushr 16 xor value.hashCode()) and (STRIPES - 1)]
+        synchronized(stripe) {
+            val current = stripe[value]?.get()
+            if (current != null) {
+                @Suppress("UNCHECKED_CAST")
+                return current as T
+            }
+
+            stripe[value] = WeakReference(value)
+            return value
+        }
+    }
+
+    fun <T : Any> internAll(values: List<T>): List<T> {
+        if (values.isEmpty()) return emptyList()
+        return intern(values.map { intern(it) })
+    }
+
+    companion object {
+        private const val STRIPES = 16
+    }
+}
@@ -52,42 +52,68 @@ import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher.Cla
 import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher.Pattern
 import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher.Simple
 import org.seqra.dataflow.configuration.jvm.simplify
-import org.seqra.dataflow.jvm.util.JIRHierarchyInfo
 import org.seqra.ir.api.jvm.JIRAnnotation
 import org.seqra.ir.api.jvm.JIRClasspath
 import org.seqra.ir.api.jvm.JIRField
 import org.seqra.ir.api.jvm.JIRMethod
 import org.seqra.ir.api.jvm.PredefinedPrimitives
 import org.seqra.ir.impl.util.adjustEmptyList
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicInteger
 
-class TaintConfiguration(cp: JIRClasspath) {
+class TaintConfiguration(
+    cp: JIRClasspath,
+    private val resolvedRulesIndex: ResolvedRulesIndex? = null,
+    private val caches: RuleCaches = RuleCaches(maxSize = null),
+    private val analysisCwe: Set<Int>? = null,
+    private val hierarchy: ClassHierarchyClosure = ClassHierarchyClosure(cp),
+) {
     private val patternManager = PatternManager()
-    private val hierarchyInfo = JIRHierarchyInfo(cp)
-
-    private val entryPointConfig = TaintRulesStorage<SerializedRule.EntryPoint, TaintEntryPointSource>()
-    private val sourceConfig = TaintRulesStorage<SerializedRule.Source, TaintMethodSource>()
-    private val sinkConfig = TaintRulesStorage<SerializedRule.Sink, TaintMethodSink>()
-    private val passThroughConfig = TaintRulesStorage<SerializedRule.PassThrough, TaintPassThrough>()
-    private val cleanerConfig = TaintRulesStorage<SerializedRule.Cleaner, TaintCleaner>()
-    private val methodExitSinkConfig = TaintRulesStorage<SerializedRule.MethodExitSink, TaintMethodExitSink>()
-    private val analysisEndSinkConfig = TaintRulesStorage<SerializedRule.MethodExitSink, TaintMethodExitSink>()
-    private val methodEntrySinkConfig = TaintRulesStorage<SerializedRule.MethodEntrySink, TaintMethodEntrySink>()
+    private val interner = StructuralInterner()
+
+    private val entryPointConfig = TaintRulesStorage<SerializedRule.EntryPoint, TaintEntryPointSource>(TaintRuleKind.ENTRY_POINT)
+    private val sourceConfig = TaintRulesStorage<SerializedRule.Source, TaintMethodSource>(TaintRuleKind.SOURCE)
+    private val sinkConfig = TaintRulesStorage<SerializedRule.Sink, TaintMethodSink>(TaintRuleKind.SINK)
+    private val passThroughConfig = TaintRulesStorage<SerializedRule.PassThrough, TaintPassThrough>(TaintRuleKind.PASS_THROUGH)
+    private val cleanerConfig = TaintRulesStorage<SerializedRule.Cleaner, TaintCleaner>(TaintRuleKind.CLEANER)
+    private val methodExitSinkConfig = TaintRulesStorage<SerializedRule.MethodExitSink, TaintMethodExitSink>(TaintRuleKind.METHOD_EXIT_SINK)
+    private val analysisEndSinkConfig = TaintRulesStorage<SerializedRule.MethodExitSink, TaintMethodExitSink>(TaintRuleKind.ANALYSIS_END_SINK)
+    private val methodEntrySinkConfig = TaintRulesStorage<SerializedRule.MethodEntrySink, TaintMethodEntrySink>(TaintRuleKind.METHOD_ENTRY_SINK)
+
+    private val methodRuleStorages = listOf(
+        entryPointConfig, sourceConfig, sinkConfig, passThroughConfig, cleanerConfig,
+        methodExitSinkConfig, analysisEndSinkConfig, methodEntrySinkConfig
+    )
 
     private val staticFieldSourceConfig = TaintFieldRulesStorage<SerializedFieldRule.SerializedStaticFieldSource, TaintStaticFieldSource>()
 
-    private val taintMarks = hashMapOf<String, TaintMark>()
+    private val taintMarks = ConcurrentHashMap<String, TaintMark>()
+
+    private val cweDisabledSinks = AtomicInteger()
+
+    /**
+     * Number of sink rules dropped on load because they don't match the analysis cwe.
+     * */
+    val cweDisabledSinkRules: Int get() = cweDisabledSinks.get()
 
     fun loadConfig(config: SerializedTaintConfig) {
         config.entryPoint?.let { entryPointConfig.addRules(it) }
         config.source?.let { sourceConfig.addRules(it) }
-        config.sink?.let { sinkConfig.addRules(it) }
+        config.sink?.let { sinkConfig.addRules(it.withAnalysisCwe()) }
         config.passThrough?.let { passThroughConfig.addRules(it) }
         config.cleaner?.let { cleanerConfig.addRules(it) }
-        config.methodExitSink?.let { methodExitSinkConfig.addRules(it) }
-        config.methodEntrySink?.let { methodEntrySinkConfig.addRules(it) }
+        config.methodExitSink?.let { methodExitSinkConfig.addRules(it.withAnalysisCwe()) }
+        config.methodEntrySink?.let { methodEntrySinkConfig.addRules(it.withAnalysisCwe()) }
         config.staticFieldSource?.let { staticFieldSourceConfig.addRules(it) }
-        config.analysisEndSink?.let { r -> analysisEndSinkConfig.addRules(r.map { it.asMethodExitSink() }) }
+        config.analysisEndSink?.let { r -> analysisEndSinkConfig.addRules(r.map { it.asMethodExitSink() }.withAnalysisCwe()) }
+    }
+
+    private fun <S : SinkRule> List<S>.withAnalysisCwe(): List<S> {
+        if (analysisCwe == null) return this
+        val enabled = filter { it.meta.enabledForCwe(analysisCwe) }
+
+        cweDisabledSinks.addAndGet(size - enabled.size)
+        return enabled
     }
 
     private val anyFunction by lazy {
@@ -100,6 +126,18 @@ class TaintConfiguration(cp: JIRClasspath) {
         return SerializedRule.MethodExitSink(anyFunction, overrides = false, condition = condition, id = id, meta = meta)
     }
 
+    private val methodNameRuleKinds = caches.cache<String, Int>(caches.counters("Method name rule kinds"))
+
+    /**
+     * Mask of [TaintRuleKind] with rules that may be applicable to the method.
+     * Depends only on the method name, so it is computed once for all methods with the same name.
+     * */
+    fun methodRuleKinds(method: JIRMethod): Int = methodNameRuleKinds.getOrResolve(method.name) { name ->
+        methodRuleStorages.fold(0) { mask, storage ->
+            if (storage.mayContainRules(name)) mask or storage.kind.mask else mask
+        }
+    }
+
     fun entryPointForMethod(method: JIRMethod): List<TaintEntryPointSource> = entryPointConfig.getConfigForMethod(method)
     fun sourceForMethod(method: JIRMethod): List<TaintMethodSource> = sourceConfig.getConfigForMethod(method)
     fun sinkForMethod(method: JIRMethod): List<TaintMethodSink> = sinkConfig.getConfigForMethod(method)
@@ -116,7 +154,7 @@ class TaintConfiguration(cp: JIRClasspath) {
 
     private inner class TaintFieldRulesStorage<S : SerializedFieldRule, T : TaintConfigurationItem> {
         private val fieldRules = hashMapOf<String, MutableList<S>>()
-        private val fieldItems = hashMapOf<JIRField, List<T>>()
+        private val fieldItems = caches.cache<JIRField, List<T>>(caches.counters("Static field rules"))
 
         fun addRules(rules: List<S>) {
             for (rule in rules) {
@@ -127,8 +165,7 @@ class TaintConfiguration(cp: JIRClasspath) {
             fieldItems.clear()
         }
 
-        @Synchronized
-        fun getConfigForField(field: JIRField): List<T> = fieldItems.getOrPut(field) {
+        fun getConfigForField(field: JIRField): List<T> = fieldItems.getOrResolve(field) {
             resolveFieldItems(field).adjustEmptyList()
         }
 
@@ -143,38 +180,61 @@ class TaintConfiguration(cp: JIRClasspath) {
             rule.resolveFieldRule(field) as List<T>
     }
 
-    private inner class TaintRulesStorage<S : SerializedRule, T : TaintConfigurationItem> {
-        private var builder: MethodTaintRulesStorage.Builder<S>? = MethodTaintRulesStorage.Builder(patternManager, hierarchyInfo)
+    private inner class TaintRulesStorage<S : SerializedRule, T : TaintConfigurationItem>(
+        val kind: TaintRuleKind
+    ) {
+        private var builder: MethodTaintRulesStorage.Builder<S>? = MethodTaintRulesStorage.Builder(patternManager, hierarchy, caches)
+
+        @Volatile
         private var storage: MethodTaintRulesStorage<S>? = null
 
         private fun storage(): MethodTaintRulesStorage<S> {
             storage?.let { return it }
 
-            storage = builder?.build()
+            return synchronized(this) {
+                storage ?: initializeStorage()
+            }
+        }
+
+        private fun initializeStorage(): MethodTaintRulesStorage<S> {
+            val storage = builder?.build() ?: error("Storage initialization failed")
             builder = null
 
-            return storage ?: error("Storage initialization failed")
+            this.storage = storage
+            return storage
         }
 
+        @Synchronized
         fun addRules(rules: List<S>) {
             val builder = this.builder ?: error("Storage rule set closed")
             builder.addRules(rules)
         }
 
-        private val methodItems = hashMapOf<JIRMethod, List<T>>()
+        fun mayContainRules(methodName: String): Boolean = storage().mayContainRules(methodName)
 
-        @Synchronized
-        fun getConfigForMethod(method: JIRMethod): List<T> = methodItems.getOrPut(method) {
+        // Items still used by the analysis are restored after eviction, so they keep their identity
+        private val methodItems = caches.cache<JIRMethod, List<T>>(
+            caches.counters("Method rules: $kind"),
+            retainEvicted = { it.isNotEmpty() }
+        )
+
+        fun getConfigForMethod(method: JIRMethod): List<T> = methodItems.getOrResolve(method) {
             resolveMethodItems(method).adjustEmptyList()
         }
 
         private fun resolveMethodItems(method: JIRMethod): List<T> {
+            if (resolvedRulesIndex?.isKnownEmpty(kind, method, hierarchy) == true) return emptyList()
+
             val rules = mutableListOf<S>()
             storage().findRules(rules, method)
 
             rules.removeAll { it.signature?.matchFunctionSignature(method) == false }
 
-            return rules.flatMap { resolveMethodRule(it, method) }
+            val items = rules.flatMap { resolveMethodRule(it, method) }
+            if (items.isEmpty()) {
+                resolvedRulesIndex?.recordEmpty(kind, method)
+            }
+            return items
         }
 
         @Suppress("UNCHECKED_CAST")
@@ -193,34 +253,14 @@ class TaintConfiguration(cp: JIRClasspath) {
         }
     }
 
-    private fun SerializedSignatureMatcher.matchFunctionSignature(method: JIRMethod): Boolean {
-        when (this) {
-            is SerializedSignatureMatcher.Simple -> {
-                if (method.parameters.size != args.size) return false
-
-                if (!`return`.match(method.returnType.typeName)) return false
-
-                return args.zip(method.parameters).all { (matcher, param) ->
-                    matcher.match(param.type.typeName)
-                }
-            }
+    // One matcher per signature of the loaded rules, matched descriptors are kept in the bounded caches
+    private val signatureMatchers = ConcurrentHashMap<SerializedSignatureMatcher, SignatureMatcher>()
+    private val signatureMatchCounters = caches.counters("Signature matches")
 
-            is SerializedSignatureMatcher.Partial -> {
-                val ret = `return`
-                if (ret != null && !ret.match(method.returnType.typeName)) return false
-
-                val params = params
-                if (params != null) {
-                    for (param in params) {
-                        val methodParam = method.parameters.getOrNull(param.index) ?: return false
-                        if (!param.type.match(methodParam.type.typeName)) return false
-                    }
-                }
-
-                return true
-            }
-        }
-    }
+    private fun SerializedSignatureMatcher.matchFunctionSignature(method: JIRMethod): Boolean =
+        signatureMatchers.getOrResolve(this) {
+            SignatureMatcher(it, patternManager, caches.cache(signatureMatchCounters))
+        }.match(method)
 
     private fun SerializedFieldRule.resolveFieldRule(field: JIRField): List<TaintConfigurationItem> {
         when (this) {
@@ -268,16 +308,16 @@ class TaintConfiguration(cp: JIRClasspath) {
         serializedCondition: SerializedCondition?,
         ctx: AnyArgSpecializationCtx,
     ): TaintConfigurationItem? {
-        val condition = serializedCondition.resolve(method, ctx).simplify()
+        val condition = interner.intern(serializedCondition.resolve(method, ctx).simplify())
         if (condition.isFalse()) return null
 
         return when (this) {
             is SerializedRule.EntryPoint -> {
-                TaintEntryPointSource(method, condition, taint.flatMap { it.resolve(method, ctx) })
+                TaintEntryPointSource(method, condition, interner.internAll(taint.flatMap { it.resolve(method, ctx) }))
             }
 
             is SerializedRule.Source -> {
-                TaintMethodSource(method, condition, taint.flatMap { it.resolve(method, ctx) })
+                TaintMethodSource(method, condition, interner.internAll(taint.flatMap { it.resolve(method, ctx) }))
             }
 
             is SerializedRule.Sink -> {
@@ -293,11 +333,11 @@ class TaintConfiguration(cp: JIRClasspath) {
             }
 
             is SerializedRule.PassThrough -> {
-                TaintPassThrough(method, condition, copy.flatMap { it.resolve(method, ctx) })
+                TaintPassThrough(method, condition, interner.internAll(copy.flatMap { it.resolve(method, ctx) }))
             }
 
             is SerializedRule.Cleaner -> {
-                TaintCleaner(method, condition, cleans.flatMap { it.resolve(method, ctx) })
+                TaintCleaner(method, condition, interner.internAll(cleans.flatMap { it.resolve(method, ctx) }))
             }
         }
     }
@@ -318,7 +358,7 @@ class TaintConfiguration(cp: JIRClasspath) {
 
     private fun SinkMetaData.message(): String? = note
 
-    private fun taintMark(name: String): TaintMark = taintMarks.getOrPut(name) { TaintMark(name) }
+    private fun taintMark(name: String): TaintMark = taintMarks.computeIfAbsent(name) { TaintMark(it) }
 
     data class AnyArgSpecializationCtx(val positions: Map<String, Argument>) {
         fun resolve(anyArg: PositionBase.AnyArgument): Argument =
@@ -346,17 +386,60 @@ class TaintConfiguration(cp: JIRClasspath) {
             return listOf(AnyArgSpecializationCtx(emptyMap()))
         }
 
-        val contexts = mutableListOf<AnyArgSpecializationCtx>()
         val allArgs = method.parameters.indices.map { Argument(it) }
-        buildAnyArgSpecializationCtx(classifiers.toList(), idx = 0, persistentHashMapOf(), allArgs, contexts)
+        val conjuncts = mutableListOf<SerializedCondition>()
+        condition.collectConjuncts(conjuncts)
+
+        val classifierList = classifiers.toList()
+        val classifierArgs = classifierList.map { classifier ->
+            classifierArguments(method, classifier, allArgs, conjuncts)
+        }
+
+        val contexts = mutableListOf<AnyArgSpecializationCtx>()
+        buildAnyArgSpecializationCtx(classifierList, idx = 0, persistentHashMapOf(), classifierArgs, contexts)
         return contexts
     }
 
+    /**
+     * Arguments that may be bound to the [classifier].
+     * Argument is pruned if some conjunct that depends only on this classifier is false for it,
+     * because the whole rule condition is false for every context with this argument.
+     * */
+    private fun classifierArguments(
+        method: JIRMethod,
+        classifier: String,
+        allArgs: List<Argument>,
+        conjuncts: List<SerializedCondition>,
+    ): List<Argument> {
+        val classifierConjuncts = conjuncts.filter { conjunct ->
+            val conjunctClassifiers = hashSetOf<String>()
+            conjunct.collectAnyArgumentClassifiers(conjunctClassifiers)
+            conjunctClassifiers.singleOrNull() == classifier
+        }
+
+        if (classifierConjuncts.isEmpty()) return allArgs
+
+        return allArgs.filter { arg ->
+            val ctx = AnyArgSpecializationCtx(mapOf(classifier to arg))
+            classifierConjuncts.none { it.resolve(method, ctx).simplify().isFalse() }
+        }
+    }
+
+    private fun SerializedCondition?.collectConjuncts(conjuncts: MutableList<SerializedCondition>) {
+        if (this == null) return
+
+        if (this is SerializedCondition.And) {
+            allOf.forEach { it.collectConjuncts(conjuncts) }
+        } else {
+            conjuncts.add(this)
+        }
+    }
+
     private fun buildAnyArgSpecializationCtx(
         classifiers: List<String>,
         idx: Int,
         current: PersistentMap<String, Argument>,
-        allArgs: List<Argument>,
+        classifierArgs: List<List<Argument>>,
         result: MutableList<AnyArgSpecializationCtx>
     ) {
         if (idx == classifiers.size) {
@@ -365,9 +448,9 @@ class TaintConfiguration(cp: JIRClasspath) {
         }
 
         val classifier = classifiers[idx]
-        for (arg in allArgs) {
+        for (arg in classifierArgs[idx]) {
             val next = current.put(classifier, arg)
-            buildAnyArgSpecializationCtx(classifiers, idx + 1, next, allArgs, result)
+            buildAnyArgSpecializationCtx(classifiers, idx + 1, next, classifierArgs, result)
         }
     }
 
@@ -412,9 +495,10 @@ class TaintConfiguration(cp: JIRClasspath) {
         ctx: AnyArgSpecializationCtx,
     ): Condition = when (this) {
         null -> ConstantTrue
-        is SerializedCondition.Not -> Not(not.resolve(method, ctx))
-        is SerializedCondition.And -> mkAnd(allOf.map { it.resolve(method, ctx) })
-        is SerializedCondition.Or -> mkOr(anyOf.map { it.resolve(method, ctx) })
+        // Nested conditions are interned too, so equal subterms of different rules are shared
+        is SerializedCondition.Not -> Not(interner.intern(not.resolve(method, ctx)))
+        is SerializedCondition.And -> mkAnd(allOf.map { interner.intern(it.resolve(method, ctx)) })
+        is SerializedCondition.Or -> mkOr(anyOf.map { interner.intern(it.resolve(method, ctx)) })
         SerializedCondition.True -> ConstantTrue
         is SerializedCondition.AnnotationType -> {
             val containsAnnotation = pos.resolveWithAnnotationConstraint(
@@ -556,7 +640,7 @@ class TaintConfiguration(cp: JIRClasspath) {
         resolveBase: (PositionBase) -> List<Position>
     ): List<Position> {
         val resolvedBase = resolveBase(base)
-        return when (this) {
+        val positions = when (this) {
             is PositionBaseWithModifiers.BaseOnly -> resolvedBase
             is PositionBaseWithModifiers.WithModifiers -> {
                 resolvedBase.map { b ->
@@ -577,6 +661,7 @@ class TaintConfiguration(cp: JIRClasspath) {
                 }
             }
         }
+        return positions.map { interner.intern(it) }
     }
 
     private fun PositionBase.resolve(method: JIRMethod, ctx: AnyArgSpecializationCtx): List<Position> {
@@ -664,3 +749,7 @@ class TaintConfiguration(cp: JIRClasspath) {
         }
     }
 }
+
+// Lock-free read for resolved keys. Missed key is resolved once, concurrent requests wait for it
+private inline fun <K : Any, V : Any> ConcurrentHashMap<K, V>.getOrResolve(key: K, crossinline resolve: (K) -> V): V =
+    get(key) ?: computeIfAbsent(key) { resolve(it) }
@@ -0,0 +1,114 @@
+package org.seqra.jvm.sast.dataflow.rules
+
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedCondition
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedTaintConfig
+import org.seqra.dataflow.configuration.jvm.serialized.SinkMetaData
+import org.seqra.dataflow.configuration.jvm.serialized.SinkRule
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Taint marks which can reach an enabled sink.
+ *
+ * Mark is relevant if it is checked by an enabled sink condition,
+ * or if it is checked by the condition of a rule that assigns, copies or cleans a relevant mark.
+ * Rules and actions for the other marks only produce facts that no sink will ever check.
+ * */
+class TaintMarkRelevance(
+    configs: List<SerializedTaintConfig>,
+    private val analysisCwe: Set<Int>?,
+) {
+    private val relevantMarks: Set<String> = computeRelevantMarks(configs)
+
+    private val prunedRulesCount = AtomicInteger()
+    private val prunedActionsCount = AtomicInteger()
+
+    val prunedRules: Int get() = prunedRulesCount.get()
+    val prunedActions: Int get() = prunedActionsCount.get()
+
+    // Entry points are kept without actions, as they may be used for the entry point selection
+    fun prune(config: SerializedTaintConfig): SerializedTaintConfig = config.copy(
+        entryPoint = config.entryPoint?.map { rule -> rule.copy(taint = rule.taint.relevantActions { it.kind }) },
+        source = config.source?.mapNotNull { rule ->
+            rule.copy(taint = rule.taint.relevantActions { it.kind }).takeIf { it.taint.isNotEmpty() }
+        }?.alsoCountPruned(config.source),
+        passThrough = config.passThrough?.mapNotNull { rule ->
+            rule.copy(copy = rule.copy.relevantActions { it.taintKind }).takeIf { it.copy.isNotEmpty() }
+        }?.alsoCountPruned(config.passThrough),
+        cleaner = config.cleaner?.mapNotNull { rule ->
+            rule.copy(cleans = rule.cleans.relevantActions { it.taintKind }).takeIf { it.cleans.isNotEmpty() }
+        }?.alsoCountPruned(config.cleaner),
+        staticFieldSource = config.staticFieldSource?.mapNotNull { rule ->
+            rule.copy(taint = rule.taint.relevantActions { it.kind }).takeIf { it.taint.isNotEmpty() }
+        }?.alsoCountPruned(config.staticFieldSource),
+    )
+
+    // Actions without mark affect all marks and are always relevant
+    private inline fun <A> List<A>.relevantActions(mark: (A) -> String?): List<A> {
+        val relevant = filter { action -> mark(action)?.let { it in relevantMarks } ?: true }
+        if (relevant.size == size) return this
+
+        prunedActionsCount.addAndGet(size - relevant.size)
+        return relevant
+    }
+
+    private fun <R> List<R>.alsoCountPruned(original: List<R>): List<R> = also {
+        prunedRulesCount.addAndGet(original.size - size)
+    }
+
+    private fun computeRelevantMarks(configs: List<SerializedTaintConfig>): Set<String> {
+        val relevant = hashSetOf<String>()
+        for (config in configs) {
+            config.sink?.forEach { it.collectSinkMarks(relevant) }
+            config.methodExitSink?.forEach { it.collectSinkMarks(relevant) }
+            config.methodEntrySink?.forEach { it.collectSinkMarks(relevant) }
+            config.analysisEndSink?.forEach { sink ->
+                if (sink.meta.enabledForCwe(analysisCwe)) sink.condition.collectMarks(relevant)
+            }
+        }
+
+        // Rule producing or cleaning a relevant mark makes the marks of its condition relevant.
+        // Affected mark is null for the actions that copy or clean all marks
+        val affectingRules = configs.flatMap { config ->
+            config.entryPoint.orEmpty().map { rule -> rule.condition to rule.taint.map { it.kind } } +
+                config.source.orEmpty().map { rule -> rule.condition to rule.taint.map { it.kind } } +
+                config.passThrough.orEmpty().map { rule -> rule.condition to rule.copy.map { it.taintKind } } +
+                config.staticFieldSource.orEmpty().map { rule -> rule.condition to rule.taint.map { it.kind } } +
+                config.cleaner.orEmpty().map { rule -> rule.condition to rule.cleans.map { it.taintKind } }
+        }
+
+        do {
+            val relevantSize = relevant.size
+            for ((condition, affectedMarks) in affectingRules) {
+                val affectsRelevant = affectedMarks.any { mark -> mark?.let { it in relevant } ?: relevant.isNotEmpty() }
+                if (affectsRelevant) {
+                    condition.collectMarks(relevant)
+                }
+            }
+        } while (relevant.size != relevantSize)
+
+        return relevant
+    }
+
+    private fun SinkRule.collectSinkMarks(marks: MutableSet<String>) {
+        if (!meta.enabledForCwe(analysisCwe)) return
+        condition.collectMarks(marks)
+    }
+
+    private fun SerializedCondition?.collectMarks(marks: MutableSet<String>) {
+        when (this) {
+            null -> return
+            is SerializedCondition.And -> allOf.forEach { it.collectMarks(marks) }
+            is SerializedCondition.Or -> anyOf.forEach { it.collectMarks(marks) }
+            is SerializedCondition.Not -> not.collectMarks(marks)
+            is SerializedCondition.ContainsMark -> marks.add(tainted)
+            else -> return
+        }
+    }
+}
+
+// Sinks without cwe are kept, as their vulnerabilities pass the analysis cwe filter
+fun SinkMetaData?.enabledForCwe(analysisCwe: Set<Int>?): Boolean {
+    if (analysisCwe == null) return true
+    val ruleCwe = this?.cwe ?: return true
+    return ruleCwe.any { it in analysisCwe }
+}
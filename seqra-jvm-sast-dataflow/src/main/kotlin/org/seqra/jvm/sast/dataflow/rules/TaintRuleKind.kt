@@ -0,0 +1,14 @@
+package org.seqra.jvm.sast.dataflow.rules
+
+enum class TaintRuleKind {
+    ENTRY_POINT,
+    SOURCE,
+    SINK,
+    PASS_THROUGH,
+    CLEANER,
+    METHOD_EXIT_SINK,
+    ANALYSIS_END_SINK,
+    METHOD_ENTRY_SINK;
+
+    val mask: Int get() = 1 shl ordinal
+}
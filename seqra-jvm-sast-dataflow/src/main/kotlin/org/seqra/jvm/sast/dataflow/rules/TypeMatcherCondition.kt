@@ -5,7 +5,6 @@ import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher
 import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher.ClassPattern
 import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher.Pattern
 import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher.Simple
-import java.util.BitSet
 
 fun SerializedNameMatcher.toConditionNameMatcher(patternManager: PatternManager): ConditionNameMatcher? {
     return when (this) {
@@ -60,50 +59,11 @@ fun SerializedNameMatcher.toConditionNameMatcher(patternManager: PatternManager)
     }
 }
 
-private fun createPattern(pattern: String, patternManager: PatternManager): ConditionNameMatcher {
-    if (pattern.startsWith(".*")) {
-        val suffix = pattern.removePrefix(".*")
-        val concreteSuffix = tryConcretizePattern(suffix)
-        if (concreteSuffix != null) {
-            return ConditionNameMatcher.PatternEndsWith(concreteSuffix)
-        }
-    }
-
-    if (pattern.endsWith(".*")) {
-        val prefix = pattern.removeSuffix(".*")
-        val concretePrefix = tryConcretizePattern(prefix)
-        if (concretePrefix != null) {
-            return ConditionNameMatcher.PatternStartsWith(concretePrefix)
-        }
+// Condition name patterns match the whole name, so simple patterns are replaced with the literal matchers
+private fun createPattern(pattern: String, patternManager: PatternManager): ConditionNameMatcher =
+    when (val matcher = patternManager.fullPatternMatcher(pattern)) {
+        is PatternMatcher.Equals -> ConditionNameMatcher.Concrete(matcher.literal)
+        is PatternMatcher.StartsWith -> ConditionNameMatcher.PatternStartsWith(matcher.prefix)
+        is PatternMatcher.EndsWith -> ConditionNameMatcher.PatternEndsWith(matcher.suffix)
+        else -> ConditionNameMatcher.Pattern(patternManager.compilePattern(pattern))
     }
-
-    return ConditionNameMatcher.Pattern(patternManager.compilePattern(pattern))
-}
-
-private fun tryConcretizePattern(pattern: String): String? {
-    val escapedIndices = BitSet()
-    val unescapedStr = StringBuilder()
-
-    var idx = 0
-    while (idx < pattern.length) {
-        val c = pattern[idx]
-        if (c == '\\') {
-            if (idx == pattern.length - 1) return null
-            escapedIndices.set(unescapedStr.length)
-            unescapedStr.append(pattern[idx + 1])
-            idx += 2
-        } else {
-            unescapedStr.append(c)
-            idx++
-        }
-    }
-
-    for ((i, ch) in unescapedStr.withIndex()) {
-        if (ch.isLetterOrDigit()) continue
-        if (escapedIndices.get(i)) continue
-
-        return null
-    }
-
-    return unescapedStr.toString()
-}
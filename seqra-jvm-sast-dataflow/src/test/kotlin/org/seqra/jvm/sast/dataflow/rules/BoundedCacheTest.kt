@@ -0,0 +1,63 @@
+package org.seqra.jvm.sast.dataflow.rules
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+class BoundedCacheTest {
+    @Test
+    fun `size bound is shared by all caches`() {
+        val caches = RuleCaches(maxSize = 100)
+        val first = caches.cache<Int, String>(caches.counters("first"))
+        val second = caches.cache<Int, String>(caches.counters("second"))
+
+        repeat(1000) {
+            first.getOrResolve(it) { key -> "$key" }
+            second.getOrResolve(it) { key -> "$key" }
+        }
+
+        assertTrue(first.size + second.size <= 100, "Total size: ${first.size + second.size}")
+        assertTrue(first.size > 0 && second.size > 0)
+    }
+
+    @Test
+    fun `recently used entries survive eviction`() {
+        val caches = RuleCaches(maxSize = 100)
+        val cache = caches.cache<Int, String>(caches.counters("cache"))
+
+        repeat(1000) {
+            cache.getOrResolve(it) { key -> "$key" }
+            cache[0]
+        }
+
+        assertEquals("0", cache[0])
+    }
+
+    @Test
+    fun `evicted value in use keeps identity`() {
+        val caches = RuleCaches(maxSize = 10)
+        val cache = caches.cache<Int, List<Int>>(caches.counters("cache"), retainEvicted = { it.isNotEmpty() })
+
+        val value = cache.getOrResolve(0) { listOf(it) }
+        repeat(100) { cache.getOrResolve(it + 1) { key -> listOf(key) } }
+
+        assertSame(value, cache.getOrResolve(0) { listOf(it) })
+    }
+
+    @Test
+    fun `nested resolution does not evict the resolving cache`() {
+        val caches = RuleCaches(maxSize = 10)
+        val outer = caches.cache<Int, List<String>>(caches.counters("outer"))
+        val inner = caches.cache<Int, String>(caches.counters("inner"))
+
+        repeat(100) { i ->
+            val value = outer.getOrResolve(i) { key ->
+                (0 until 20).map { inner.getOrResolve(key * 20 + it) { innerKey -> "$innerKey" } }
+            }
+            assertEquals(20, value.size)
+        }
+
+        assertTrue(outer.size + inner.size <= 10, "Total size: ${outer.size + inner.size}")
+    }
+}
@@ -0,0 +1,60 @@
+package org.seqra.jvm.sast.dataflow.rules
+
+import io.mockk.mockk
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedFunctionNameMatcher
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedRule
+import kotlin.test.Test
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class MethodTaintRulesStorageTest {
+    private fun cleaner(methodName: SerializedNameMatcher) = SerializedRule.Cleaner(
+        SerializedFunctionNameMatcher.Complex(
+            SerializedNameMatcher.Simple("test"), SerializedNameMatcher.Simple("Test"), methodName
+        ),
+        signature = null, overrides = true, condition = null, cleans = emptyList()
+    )
+
+    // Method name mask must not depend on the class hierarchy, so the strict hierarchy mock is never called
+    private fun storage(vararg methodNames: SerializedNameMatcher): MethodTaintRulesStorage<SerializedRule.Cleaner> {
+        val builder = MethodTaintRulesStorage.Builder<SerializedRule.Cleaner>(
+            PatternManager(), mockk<ClassHierarchyClosure>(), RuleCaches(maxSize = null)
+        )
+        builder.addRules(methodNames.map { cleaner(it) })
+        return builder.build()
+    }
+
+    @Test
+    fun `concrete method names may contain rules`() {
+        val storage = storage(SerializedNameMatcher.Simple("foo"))
+
+        assertTrue(storage.mayContainRules("foo"))
+        assertFalse(storage.mayContainRules("bar"))
+        assertFalse(storage.mayContainRules("fooBar"))
+    }
+
+    @Test
+    fun `method name patterns may contain rules`() {
+        val storage = storage(SerializedNameMatcher.Pattern("get.*"), SerializedNameMatcher.Simple("foo"))
+
+        assertTrue(storage.mayContainRules("getValue"))
+        assertTrue(storage.mayContainRules("foo"))
+        assertFalse(storage.mayContainRules("setValue"))
+    }
+
+    @Test
+    fun `any method name rules match every name`() {
+        val storage = storage(SerializedNameMatcher.Simple("*"))
+
+        assertTrue(storage.mayContainRules("foo"))
+        assertTrue(storage.mayContainRules("<init>"))
+    }
+
+    @Test
+    fun `empty storage contains no rules`() {
+        val storage = storage()
+
+        assertFalse(storage.mayContainRules("foo"))
+    }
+}
@@ -0,0 +1,62 @@
+package org.seqra.jvm.sast.dataflow.rules
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class MultiPatternMatcherTest {
+    private val matchedSamples = listOf(
+        "get.*Value" to "getIntValue",
+        "foo\\x41123" to "fooA123",
+        "\\x{41}bc" to "Abc",
+        "\\0101bc" to "Abc",
+        "\\0777" to "?7",
+        "\\u0041bcd" to "Abcd",
+        "\\cAxyz" to "\u0001xyz",
+        "\\p{Lu}ower" to "Lower",
+        "\\pLower" to "Lower",
+        "\\d+abc\\.\\w*" to "12abc.x",
+        "(?<name>ab)c\\k<name>" to "abcab",
+        "a\\.b*c" to "a.c",
+        "set[A-Z]\\w*" to "setName",
+    )
+
+    @Test
+    fun `required literal occurs in matched strings`() {
+        for ((pattern, sample) in matchedSamples) {
+            assertTrue(Regex(pattern).containsMatchIn(sample), "Sample doesn't match $pattern")
+
+            val literal = MultiPatternMatcher.requiredLiteral(pattern) ?: continue
+            assertTrue(literal in sample, "Literal '$literal' of $pattern is not in $sample")
+        }
+    }
+
+    @Test
+    fun `escape digits are not literals`() {
+        assertEquals("123", MultiPatternMatcher.requiredLiteral("\\x41123"))
+        assertEquals("bc", MultiPatternMatcher.requiredLiteral("\\0101bc"))
+        assertEquals("7", MultiPatternMatcher.requiredLiteral("\\0777"))
+        assertEquals("bcd", MultiPatternMatcher.requiredLiteral("\\u0041bcd"))
+        assertNull(MultiPatternMatcher.requiredLiteral("(a)\\1b"))
+    }
+
+    @Test
+    fun `match same patterns as regex`() {
+        val patterns = matchedSamples.map { it.first } + listOf("a|b", "x{2,3}yz", "[^a]bc", ".*")
+        val strings = matchedSamples.map { it.second } + listOf("b", "xxyz", "zbc", "", "nothing")
+
+        for (fullMatch in listOf(true, false)) {
+            val matcher = MultiPatternMatcher.build(patterns.map { Regex(it) to it }, fullMatch)
+            for (str in strings) {
+                val expected = patterns.filter {
+                    if (fullMatch) Regex(it).matches(str) else Regex(it).containsMatchIn(str)
+                }
+
+                val actual = mutableListOf<String>()
+                matcher.forEachMatch(str) { actual += it }
+                assertEquals(expected, actual, "Incorrect matches of '$str'")
+            }
+        }
+    }
+}
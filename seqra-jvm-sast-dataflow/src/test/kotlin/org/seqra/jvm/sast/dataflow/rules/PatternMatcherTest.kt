@@ -0,0 +1,67 @@
+package org.seqra.jvm.sast.dataflow.rules
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertIs
+import kotlin.test.assertNull
+
+class PatternMatcherTest {
+    private val patternManager = PatternManager()
+
+    private val patterns = listOf(
+        "get", "^get", "get$", "^get$", ".*Value", "get.*", "get(.)*", "^get(.)*",
+        "get|set", "^(get|set)$", "(?:get|set)Value", "^(?:getValue|setValue)$",
+        "<init>", "my_name", "a-b", "java\\.lang", "\\$\\$Lambda", "\\d+", "get\\w*",
+        "[gs]et.*", "g.t", ".*", "x{2}", "value$",
+    )
+
+    private val strings = listOf(
+        "get", "getValue", "setValue", "isValue", "Value", "forget", "", "<init>", "my_name",
+        "a-b", "java.lang", "javaXlang", "Foo\$\$Lambda\$1", "123", "gxt", "xx", "value", "valueX",
+    )
+
+    @Test
+    fun `contains match is same as regex`() {
+        for (pattern in patterns) {
+            val matcher = patternManager.patternMatcher(pattern)
+            for (str in strings) {
+                assertEquals(
+                    Regex(pattern).containsMatchIn(str), matcher.match(str),
+                    "Incorrect match of '$str' with $pattern ($matcher)"
+                )
+            }
+        }
+    }
+
+    @Test
+    fun `full match is same as regex`() {
+        for (pattern in patterns) {
+            val matcher = patternManager.fullPatternMatcher(pattern)
+            for (str in strings) {
+                assertEquals(
+                    Regex(pattern).matches(str), matcher.match(str),
+                    "Incorrect full match of '$str' with $pattern ($matcher)"
+                )
+            }
+        }
+    }
+
+    @Test
+    fun `simple patterns are matched without regex`() {
+        assertIs<PatternMatcher.StartsWith>(patternManager.patternMatcher("^get(.)*"))
+        assertIs<PatternMatcher.EqualsAny>(patternManager.patternMatcher("^(get|set)$"))
+        assertIs<PatternMatcher.EndsWith>(patternManager.fullPatternMatcher(".*Value"))
+        assertIs<PatternMatcher.Equals>(patternManager.fullPatternMatcher("java\\.lang"))
+        assertIs<PatternMatcher.RegexMatcher>(patternManager.patternMatcher("\\d+"))
+    }
+
+    @Test
+    fun `concretize non meta characters`() {
+        assertEquals("<init>", tryConcretizePattern("<init>"))
+        assertEquals("my_name", tryConcretizePattern("my_name"))
+        assertEquals("java.lang", tryConcretizePattern("java\\.lang"))
+        assertNull(tryConcretizePattern("java.lang"))
+        assertNull(tryConcretizePattern("\\d"))
+        assertNull(tryConcretizePattern("a\\"))
+    }
+}
@@ -0,0 +1,102 @@
+package org.seqra.jvm.sast.dataflow.rules
+
+import org.seqra.dataflow.configuration.jvm.serialized.PositionBase
+import org.seqra.dataflow.configuration.jvm.serialized.PositionBaseWithModifiers
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedCondition
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedFunctionNameMatcher
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedRule
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedTaintAssignAction
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedTaintCleanAction
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedTaintConfig
+import org.seqra.dataflow.configuration.jvm.serialized.SinkMetaData
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class TaintMarkRelevanceTest {
+    private val pos = PositionBaseWithModifiers.BaseOnly(PositionBase.Result)
+
+    private fun function(name: String) = SerializedFunctionNameMatcher.Complex(
+        SerializedNameMatcher.Simple("test"), SerializedNameMatcher.Simple("Test"), SerializedNameMatcher.Simple(name)
+    )
+
+    private fun source(name: String, vararg marks: String, condition: SerializedCondition? = null) = SerializedRule.Source(
+        function(name), signature = null, overrides = true, condition = condition,
+        taint = marks.map { SerializedTaintAssignAction(it, pos = pos) }
+    )
+
+    private fun cleaner(name: String, mark: String?, condition: SerializedCondition? = null) = SerializedRule.Cleaner(
+        function(name), signature = null, overrides = true, condition = condition,
+        cleans = listOf(SerializedTaintCleanAction(mark, pos))
+    )
+
+    private fun sink(mark: String, cwe: Int? = null) = SerializedRule.Sink(
+        function("sink"), signature = null, overrides = true,
+        condition = SerializedCondition.ContainsMark(mark, pos), id = "sink-$mark",
+        meta = SinkMetaData(cwe = cwe?.let { listOf(it) })
+    )
+
+    private fun SerializedTaintConfig.sourceMarks(): List<List<String>> =
+        source.orEmpty().map { rule -> rule.taint.map { it.kind } }
+
+    @Test
+    fun `actions of unchecked marks are pruned`() {
+        val config = SerializedTaintConfig(
+            source = listOf(source("both", "a", "b"), source("unchecked", "b")),
+            cleaner = listOf(cleaner("cleanA", "a"), cleaner("cleanB", "b")),
+            sink = listOf(sink("a")),
+        )
+
+        val relevance = TaintMarkRelevance(listOf(config), analysisCwe = null)
+        val pruned = relevance.prune(config)
+
+        assertEquals(listOf(listOf("a")), pruned.sourceMarks())
+        assertEquals(listOf("a"), pruned.cleaner.orEmpty().flatMap { rule -> rule.cleans.map { it.taintKind } })
+        assertEquals(2, relevance.prunedRules)
+        assertEquals(3, relevance.prunedActions)
+    }
+
+    @Test
+    fun `marks checked by producers of relevant marks are relevant`() {
+        val config = SerializedTaintConfig(
+            source = listOf(
+                source("state", "state"),
+                source("value", "a", condition = SerializedCondition.ContainsMark("state", pos)),
+            ),
+            sink = listOf(sink("a")),
+        )
+
+        val pruned = TaintMarkRelevance(listOf(config), analysisCwe = null).prune(config)
+
+        assertEquals(listOf(listOf("state"), listOf("a")), pruned.sourceMarks())
+    }
+
+    @Test
+    fun `marks checked by cleaners of relevant marks are relevant`() {
+        val config = SerializedTaintConfig(
+            source = listOf(source("value", "a"), source("sanitize", "sanitized"), source("unchecked", "b")),
+            cleaner = listOf(
+                cleaner("clean", "a", condition = SerializedCondition.ContainsMark("sanitized", pos)),
+                cleaner("cleanAll", null, condition = SerializedCondition.ContainsMark("b", pos)),
+            ),
+            sink = listOf(sink("a")),
+        )
+
+        val pruned = TaintMarkRelevance(listOf(config), analysisCwe = null).prune(config)
+
+        assertEquals(listOf(listOf("a"), listOf("sanitized"), listOf("b")), pruned.sourceMarks())
+        assertEquals(2, pruned.cleaner.orEmpty().size)
+    }
+
+    @Test
+    fun `marks of sinks disabled by cwe are pruned`() {
+        val config = SerializedTaintConfig(
+            source = listOf(source("sql", "sql"), source("xss", "xss"), source("any", "any")),
+            sink = listOf(sink("sql", cwe = 89), sink("xss", cwe = 79), sink("any")),
+        )
+
+        val pruned = TaintMarkRelevance(listOf(config), analysisCwe = setOf(79)).prune(config)
+
+        assertEquals(listOf(listOf("xss"), listOf("any")), pruned.sourceMarks())
+    }
+}
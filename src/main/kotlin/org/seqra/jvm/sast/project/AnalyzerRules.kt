@@ -0,0 +1,288 @@
+package org.seqra.jvm.sast.project
+
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+import mu.KLogging
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedTaintConfig
+import org.seqra.dataflow.configuration.jvm.serialized.loadSerializedTaintConfig
+import org.seqra.dataflow.jvm.util.JIRHierarchyInfo
+import org.seqra.ir.api.jvm.JIRClassOrInterface
+import org.seqra.ir.api.jvm.JIRClasspath
+import org.seqra.ir.api.jvm.ext.allSuperHierarchy
+import org.seqra.ir.impl.features.classpaths.JIRUnknownClass
+import org.seqra.jvm.sast.dataflow.rules.ResolvedRulesIndex
+import org.seqra.jvm.sast.dataflow.rules.TaintMarkRelevance
+import org.seqra.jvm.sast.util.defaultConfigPath
+import org.seqra.jvm.sast.util.loadDefaultConfig
+import org.seqra.semgrep.pattern.AbstractSemgrepError
+import org.seqra.semgrep.pattern.ClasspathQuery
+import org.seqra.semgrep.pattern.RuleMetadata
+import org.seqra.semgrep.pattern.SemgrepFileErrors
+import org.seqra.semgrep.pattern.SemgrepRuleErrors
+import org.seqra.semgrep.pattern.SemgrepRuleLoader
+import org.seqra.semgrep.pattern.SemgrepRuleUtils
+import org.seqra.semgrep.pattern.createTaintConfig
+import java.nio.file.Path
+import java.util.concurrent.Callable
+import java.util.concurrent.ForkJoinPool
+import java.util.stream.Collectors
+import kotlin.io.path.absolutePathString
+import kotlin.io.path.extension
+import kotlin.io.path.inputStream
+import kotlin.io.path.outputStream
+import kotlin.io.path.readText
+import kotlin.io.path.walk
+import kotlin.time.TimeSource
+
+/**
+ * Analyzer rules shared by the analyses of all subprojects.
+ * Rules are loaded on the first use. Semgrep rules are compiled only for the classpaths they may match.
+ * */
+class AnalyzerRules(
+    val customConfigPath: Path?,
+    val semgrepRuleSet: Path?,
+    private val semgrepRuleLoadErrors: Path?,
+    private val analysisCwe: Set<Int>?,
+    private val semgrepCompilationThreads: Int = 1,
+    private val semgrepRuleCacheDir: Path? = null,
+    private val semgrepDecisionDiagrams: Boolean = false,
+) {
+    class SemgrepRules(
+        val taintConfigs: List<SerializedTaintConfig>,
+        val metadatas: List<RuleMetadata>,
+        val configHash: String,
+    )
+
+    private class RelevantConfigs(
+        val defaultConfig: SerializedTaintConfig,
+        val customConfig: SerializedTaintConfig?,
+    )
+
+    private class CompiledSemgrepRule(
+        val taintConfig: SerializedTaintConfig,
+        val metadata: RuleMetadata,
+    )
+
+    private val loadedDefaultConfig: SerializedTaintConfig by lazy {
+        loadDefaultConfig()
+    }
+
+    private val loadedCustomConfig: SerializedTaintConfig? by lazy {
+        customConfigPath?.inputStream()?.use { loadSerializedTaintConfig(it) }
+    }
+
+    private val relevantConfigs: RelevantConfigs by lazy {
+        val defaultConfig = loadedDefaultConfig
+        val customConfig = loadedCustomConfig
+        val relevance = TaintMarkRelevance(listOfNotNull(defaultConfig, customConfig), analysisCwe)
+
+        RelevantConfigs(
+            defaultConfig = relevance.prune(defaultConfig),
+            customConfig = customConfig?.let { relevance.prune(it) },
+        ).also { logPrunedRules(relevance) }
+    }
+
+    val defaultConfig: SerializedTaintConfig
+        get() = relevantConfigs.defaultConfig
+
+    val customConfig: SerializedTaintConfig?
+        get() = relevantConfigs.customConfig
+
+    // Relevance is computed over both configs, so the pruned rules of each config depend on both files
+    private val relevantConfigsHash: String by lazy {
+        ResolvedRulesIndex.contentHash(listOfNotNull(defaultConfigPath(), customConfigPath))
+    }
+
+    val defaultConfigHash: String
+        get() = "default-$relevantConfigsHash"
+
+    val customConfigHash: String
+        get() = "custom-$relevantConfigsHash"
+
+    private val semgrepConfigHash: String by lazy {
+        ResolvedRulesIndex.contentHash(listOfNotNull(defaultConfigPath(), semgrepRuleSet))
+    }
+
+    private val semgrepLoader by lazy { SemgrepRuleLoader(semgrepDecisionDiagrams) }
+    private val semgrepFilesErrors = arrayListOf<AbstractSemgrepError>()
+    private val semgrepRuleCache by lazy { semgrepRuleCacheDir?.let { SemgrepRuleCache(it, semgrepLoader) } }
+
+    private val parsedSemgrepRules: List<SemgrepRuleLoader.ParsedRule> by lazy {
+        semgrepRuleSet?.let { parseSemgrepRules(it) }.orEmpty()
+    }
+
+    private val compiledSemgrepRules = hashMapOf<SemgrepRuleLoader.ParsedRule, CompiledSemgrepRule?>()
+    private val skippedSemgrepRules = hashSetOf<SemgrepRuleLoader.ParsedRule>()
+    private val semgrepRulesCache = hashMapOf<List<SemgrepRuleLoader.ParsedRule>, SemgrepRules>()
+
+    /**
+     * Semgrep rules which may match in the [cp].
+     * Rule is compiled on the first request from a classpath with all its required classes,
+     * so the rules are compiled at most once per run.
+     *
+     * Classes missing from the classpath are not available, even if the project calls them:
+     * calls to unresolved library classes are not matched by the rules that require these classes.
+     * */
+    @Synchronized
+    fun semgrepRules(cp: JIRClasspath): SemgrepRules {
+        val classpath = JIRClasspathQuery(cp)
+        val (applicable, notApplicable) = parsedSemgrepRules.partition { rule ->
+            rule.requirement.satisfied(classpath)
+        }
+
+        notApplicable.filter { skippedSemgrepRules.add(it) }.forEach { semgrepLoader.skipNotApplicableRule(it) }
+        logger.info { "Semgrep rules: ${applicable.size} applicable, ${notApplicable.size} skipped as not applicable" }
+
+        val rules = semgrepRulesCache.getOrPut(applicable) { compileSemgrepRules(applicable) }
+
+        if (semgrepRuleLoadErrors != null) {
+            writeSemgrepLoadErrors(semgrepRuleLoadErrors, semgrepFilesErrors)
+        }
+
+        return rules
+    }
+
+    private fun parseSemgrepRules(semgrepRulesPath: Path): List<SemgrepRuleLoader.ParsedRule> {
+        val rules = mutableListOf<SemgrepRuleLoader.ParsedRule>()
+
+        // Files are sorted to keep the rule order independent of the file system
+        val ruleExtensions = arrayOf("yaml", "yml")
+        val rulePaths = semgrepRulesPath.walk().filter { it.extension in ruleExtensions }.sorted().toList()
+
+        val parsedRuleSets = rulePaths.mapInParallel { rulePath ->
+            val ruleName = semgrepRulesPath.resolve(rulePath).absolutePathString()
+
+            val ruleText = rulePath.readText()
+
+            val semgrepFileErrors = SemgrepFileErrors(ruleName)
+            semgrepFileErrors to semgrepLoader.parseRuleSet(ruleText, ruleName, semgrepFileErrors)
+        }
+
+        for ((semgrepFileErrors, parsedRules) in parsedRuleSets) {
+            semgrepFilesErrors += semgrepFileErrors
+            rules += parsedRules
+        }
+
+        logger.info { "Parsed ${rules.size} semgrep rules from $semgrepRulesPath" }
+        return rules
+    }
+
+    // Semgrep rules are analyzed with the default pass-through rules only
+    private fun compileSemgrepRules(applicable: List<SemgrepRuleLoader.ParsedRule>): SemgrepRules {
+        val notCompiled = applicable.filter { it !in compiledSemgrepRules }
+        val compilationStart = TimeSource.Monotonic.markNow()
+
+        // Each rule reports to its own errors, so rules are compiled independently
+        val newlyCompiled = notCompiled.mapInParallel { rule ->
+            val cache = semgrepRuleCache
+            val taintConfig = if (cache != null) {
+                cache.getOrCompile(rule) { errors -> compileSemgrepRule(rule, errors) }
+            } else {
+                compileSemgrepRule(rule)
+            }
+
+            taintConfig?.let { CompiledSemgrepRule(it, semgrepLoader.ruleMetadata(rule)) }
+        }
+        notCompiled.zip(newlyCompiled).forEach { (rule, compiled) -> compiledSemgrepRules[rule] = compiled }
+
+        logger.info {
+            "Compiled ${newlyCompiled.count { it != null }}/${notCompiled.size} semgrep rules " +
+                "in ${compilationStart.elapsedNow()} with $semgrepCompilationThreads threads"
+        }
+
+        semgrepRuleCache?.let { cache ->
+            logger.info { "Semgrep rule cache: ${cache.hits} hits, ${cache.misses} misses" }
+        }
+
+        val compiled = applicable.mapNotNull { compiledSemgrepRules[it] }
+
+        val defaultPassRules = SerializedTaintConfig(passThrough = loadedDefaultConfig.passThrough)
+        val configs = listOf(defaultPassRules) + compiled.map { it.taintConfig }
+
+        val relevance = TaintMarkRelevance(configs, analysisCwe)
+        val relevantConfigs = configs.map { relevance.prune(it) }
+        logPrunedRules(relevance)
+
+        // Resolved rules depend on the applicable rule subset
+        val ruleIds = applicable.map { SemgrepRuleUtils.getRuleId(it.ruleSetName, it.rule.id) }
+        val configHash = "$semgrepConfigHash-${ResolvedRulesIndex.valuesHash(ruleIds)}"
+
+        return SemgrepRules(relevantConfigs, compiled.map { it.metadata }, configHash)
+    }
+
+    private fun compileSemgrepRule(
+        rule: SemgrepRuleLoader.ParsedRule,
+        errors: SemgrepRuleErrors = rule.errors,
+    ): SerializedTaintConfig? =
+        semgrepLoader.compileRule(rule, errors)?.first?.createTaintConfig()
+
+    // Results are in the order of the input list regardless of the completion order
+    private fun <T, R> List<T>.mapInParallel(body: (T) -> R): List<R> {
+        if (semgrepCompilationThreads <= 1 || size <= 1) return map(body)
+
+        val pool = ForkJoinPool(semgrepCompilationThreads)
+        try {
+            return pool.submit(Callable {
+                parallelStream().map { body(it) }.collect(Collectors.toList())
+            }).get()
+        } finally {
+            pool.shutdown()
+        }
+    }
+
+    private fun logPrunedRules(relevance: TaintMarkRelevance) {
+        logger.info {
+            "Pruned taint rules for marks irrelevant to the enabled sinks: " +
+                "${relevance.prunedRules} rules, ${relevance.prunedActions} actions"
+        }
+    }
+
+    private fun writeSemgrepLoadErrors(output: Path, errors: List<AbstractSemgrepError>) {
+        runCatching {
+            val prettyJson = Json {
+                prettyPrint = true
+            }
+            output.outputStream().bufferedWriter().use { writer ->
+                writer.write(prettyJson.encodeToString(errors))
+            }
+            logger.info { "Wrote semgrep load errors to $output" }
+        }.onFailure { ex ->
+            logger.error(ex) { "Failed to write semgrep load errors to $output: ${ex.message}" }
+        }
+    }
+
+    // UnknownClasses feature resolves any class name, so unknown classes are treated as missing
+    private class JIRClasspathQuery(private val cp: JIRClasspath) : ClasspathQuery {
+        private val hierarchy by lazy { JIRHierarchyInfo(cp) }
+
+        override fun classExists(className: String): Boolean = knownClass(className) != null
+
+        override fun methodExists(className: String, methodName: String): Boolean {
+            val cls = knownClass(className) ?: return false
+            if (cls.declaresMethod(methodName)) return true
+            if (cls.allSuperHierarchy.any { it.declaresMethod(methodName) }) return true
+
+            // Interfaces don't have the Object super class, but their instances have the Object methods
+            return knownClass(JAVA_OBJECT)?.declaresMethod(methodName) ?: false
+        }
+
+        override fun declaresMethod(className: String, methodName: String): Boolean =
+            knownClass(className)?.declaresMethod(methodName) ?: false
+
+        override fun forEachSubClassName(className: String, body: (String) -> Unit) {
+            hierarchy.forEachSubClassName(className, body)
+        }
+
+        private fun knownClass(className: String): JIRClassOrInterface? =
+            cp.findClassOrNull(className)?.takeIf { it !is JIRUnknownClass }
+
+        private fun JIRClassOrInterface.declaresMethod(methodName: String): Boolean =
+            declaredMethods.any { it.name == methodName }
+    }
+
+    companion object {
+        private val logger = object : KLogging() {}.logger
+
+        private const val JAVA_OBJECT = "java.lang.Object"
+    }
+}
@@ -1,13 +1,9 @@
 package org.seqra.jvm.sast.project
 
-import kotlinx.serialization.encodeToString
-import kotlinx.serialization.json.Json
 import mu.KLogging
 import org.seqra.dataflow.ap.ifds.TaintAnalysisUnitRunnerManager
 import org.seqra.dataflow.ap.ifds.access.ApMode
 import org.seqra.dataflow.ap.ifds.trace.VulnerabilityWithTrace
-import org.seqra.dataflow.configuration.jvm.serialized.SerializedTaintConfig
-import org.seqra.dataflow.configuration.jvm.serialized.loadSerializedTaintConfig
 import org.seqra.dataflow.jvm.ap.ifds.JIRSummarySerializationContext
 import org.seqra.dataflow.jvm.ap.ifds.taint.TaintRulesProvider
 import org.seqra.dataflow.jvm.ap.ifds.taint.applyAnalysisEndSinksForEntryPoints
@@ -20,35 +16,26 @@ import org.seqra.jvm.sast.dataflow.JIRCombinedTaintRulesProvider
 import org.seqra.jvm.sast.dataflow.JIRTaintAnalyzer
 import org.seqra.jvm.sast.dataflow.JIRTaintAnalyzer.DebugOptions
 import org.seqra.jvm.sast.dataflow.JIRTaintRulesProvider
+import org.seqra.jvm.sast.dataflow.rules.ClassHierarchyClosure
+import org.seqra.jvm.sast.dataflow.rules.ResolvedRulesIndex
+import org.seqra.jvm.sast.dataflow.rules.RuleCaches
 import org.seqra.jvm.sast.dataflow.rules.TaintConfiguration
 import org.seqra.jvm.sast.sarif.SarifGenerator
 import org.seqra.jvm.sast.se.api.SastSeAnalyzer
-import org.seqra.jvm.sast.util.loadDefaultConfig
 import org.seqra.project.Project
-import org.seqra.semgrep.pattern.AbstractSemgrepError
-import org.seqra.semgrep.pattern.SemgrepFileErrors
-import org.seqra.semgrep.pattern.SemgrepRuleLoader
-import org.seqra.semgrep.pattern.TaintRuleFromSemgrep
-import org.seqra.semgrep.pattern.createTaintConfig
 import org.seqra.semgrep.pattern.RuleMetadata
 import java.io.OutputStream
 import java.nio.file.Path
-import kotlin.io.path.absolutePathString
 import kotlin.io.path.div
-import kotlin.io.path.extension
-import kotlin.io.path.inputStream
 import kotlin.io.path.outputStream
-import kotlin.io.path.readText
-import kotlin.io.path.walk
 import kotlin.time.Duration
 
 class ProjectAnalyzer(
     private val project: Project,
     private val projectPackage: String?,
     private val resultDir: Path,
-    private val customConfig: Path?,
-    private val semgrepRuleSet: Path?,
-    private val semgrepRuleLoadErrors: Path?,
+    private val rules: AnalyzerRules,
+    private val resolvedRulesIndexDir: Path?,
     private val cwe: List<Int>,
     private val useSymbolicExecution: Boolean,
     private val symbolicExecutionTimeout: Duration,
@@ -56,9 +43,16 @@ class ProjectAnalyzer(
     private val ifdsApMode: ApMode,
     private val projectKind: ProjectKind,
     private val storeSummaries: Boolean,
+    private val taintRulesWarmUpThreads: Int?,
+    private val taintRulesCacheSize: Int?,
     private val debugOptions: DebugOptions
 ) {
-    private val ruleMetadatas = mutableListOf<RuleMetadata>()
+    private val resolvedRulesIndexes = mutableListOf<ResolvedRulesIndex>()
+
+    // All rule caches share one size budget
+    private val ruleCaches = RuleCaches(taintRulesCacheSize)
+    private val taintConfigurations = mutableListOf<TaintConfiguration>()
+    private var ruleMetadatas = emptyList<RuleMetadata>()
 
     fun analyze() {
         val projectAnalysisContext = initializeProjectAnalysisContext(
@@ -73,17 +67,17 @@ class ProjectAnalyzer(
     }
 
     private fun loadTaintConfig(cp: JIRClasspath): TaintRulesProvider {
-        if (semgrepRuleSet != null) {
-            check(customConfig == null) { "Unsupported custom config" }
-            return loadSemgrepRules(cp, semgrepRuleSet, semgrepRuleLoadErrors)
+        if (rules.semgrepRuleSet != null) {
+            check(rules.customConfigPath == null) { "Unsupported custom config" }
+            return loadSemgrepRules(cp)
         }
 
-        val defaultConfig = TaintConfiguration(cp)
-        defaultConfig.loadConfig(loadDefaultConfig())
-        val customConfig = customConfig?.let { cfg ->
-            cfg.inputStream().use { cfgStream ->
-                TaintConfiguration(cp).apply { loadConfig(loadSerializedTaintConfig(cfgStream)) }
-            }
+        // Default and custom rules are resolved against the same class hierarchy
+        val hierarchy = ClassHierarchyClosure(cp)
+        val defaultConfig = createTaintConfiguration(cp, hierarchy) { rules.defaultConfigHash }
+        defaultConfig.loadConfig(rules.defaultConfig)
+        val customConfig = rules.customConfig?.let { cfg ->
+            createTaintConfiguration(cp, hierarchy) { rules.customConfigHash }.apply { loadConfig(cfg) }
         }
 
         val defaultRules = JIRTaintRulesProvider(defaultConfig)
@@ -91,78 +85,55 @@ class ProjectAnalyzer(
 
         val customRules = JIRTaintRulesProvider(customConfig)
 
-        return JIRCombinedTaintRulesProvider(defaultRules, customRules)
+        return JIRCombinedTaintRulesProvider(defaultRules, customRules, caches = ruleCaches)
     }
 
-    private fun loadSemgrepRules(
-        cp: JIRClasspath,
-        semgrepRulesPath: Path,
-        semgrepRuleLoadErrors: Path?
-    ): TaintRulesProvider {
-        val semgrepFilesErrors: ArrayList<AbstractSemgrepError> = arrayListOf()
-        val semgrepRules = parseSemgrepRules(semgrepRulesPath, semgrepFilesErrors)
-        if (semgrepRuleLoadErrors != null) {
-            runCatching {
-                val prettyJson = Json {
-                    prettyPrint = true
-                }
-                semgrepRuleLoadErrors.outputStream().bufferedWriter().use { writer ->
-                    writer.write(prettyJson.encodeToString(semgrepFilesErrors))
-                }
-                logger.info { "Wrote semgrep load errors to $semgrepRuleLoadErrors" }
-            }.onFailure { ex ->
-                logger.error(ex) { "Failed to write semgrep load errors to $semgrepRuleLoadErrors: ${ex.message}" }
-            }
-
-        }
-
-        val defaultRules = loadDefaultConfig()
-        val defaultPassRules = SerializedTaintConfig(passThrough = defaultRules.passThrough)
+    private fun loadSemgrepRules(cp: JIRClasspath): TaintRulesProvider {
+        val semgrepRules = rules.semgrepRules(cp)
+        ruleMetadatas = semgrepRules.metadatas
 
-        val config = TaintConfiguration(cp)
-        config.loadConfig(defaultPassRules)
-        semgrepRules.forEach { config.loadConfig(it.createTaintConfig()) }
+        val config = createTaintConfiguration(cp, ClassHierarchyClosure(cp)) { semgrepRules.configHash }
+        semgrepRules.taintConfigs.forEach { config.loadConfig(it) }
 
         return JIRTaintRulesProvider(config)
     }
 
-    private fun parseSemgrepRules(
-        semgrepRulesPath: Path,
-        semgrepFilesError: ArrayList<AbstractSemgrepError>
-    ): List<TaintRuleFromSemgrep> {
-        val rules = mutableListOf<TaintRuleFromSemgrep>()
-        val loader = SemgrepRuleLoader()
-        val ruleExtensions = arrayOf("yaml", "yml")
-        semgrepRulesPath.walk().filter { it.extension in ruleExtensions }.forEach { rulePath ->
-            val ruleName = semgrepRulesPath.resolve(rulePath).absolutePathString()
-
-            val ruleText = rulePath.readText()
-
-            val semgrepFileErrors = SemgrepFileErrors(ruleName)
-            semgrepFilesError += semgrepFileErrors
-            val (loadedRules, loadedMetadatas) = loader.loadRuleSet(
-                ruleText,
-                ruleName,
-                semgrepFileErrors
-            ).unzip()
-            rules += loadedRules
-            ruleMetadatas += loadedMetadatas
+    private val analysisCwe: Set<Int>? = cwe.takeIf { it.isNotEmpty() }?.toSet()
+
+    private fun createTaintConfiguration(
+        cp: JIRClasspath,
+        hierarchy: ClassHierarchyClosure,
+        configHash: () -> String,
+    ): TaintConfiguration {
+        val index = resolvedRulesIndexDir?.let { indexDir ->
+            // Resolved rules depend on the enabled sinks
+            val cweSuffix = analysisCwe?.sorted()?.joinToString(separator = "-", prefix = "-cwe-").orEmpty()
+            ResolvedRulesIndex.load(indexDir, configHash() + cweSuffix, cp).also { resolvedRulesIndexes += it }
         }
-        return rules
+
+        return TaintConfiguration(cp, index, ruleCaches, analysisCwe, hierarchy)
+            .also { taintConfigurations += it }
     }
 
     private fun ProjectAnalysisContext.runAnalyzer(entryPoints: List<JIRMethod>) {
         val summarySerializationContext = JIRSummarySerializationContext(cp)
 
+        val taintRules = loadTaintConfig(cp)
+        if (analysisCwe != null) {
+            val disabledSinks = taintConfigurations.sumOf { it.cweDisabledSinkRules }
+            logger.info { "Sink rules disabled by cwe $analysisCwe: $disabledSinks" }
+        }
+
         JIRTaintAnalyzer(
-            cp, loadTaintConfig(cp).applyAnalysisEndSinksForEntryPoints(entryPoints.toHashSet()),
+            cp, taintRules.applyAnalysisEndSinksForEntryPoints(entryPoints.toHashSet()),
             projectLocations = projectClasses.projectLocations,
             ifdsTimeout = ifdsAnalysisTimeout,
             ifdsApMode = ifdsApMode,
             symbolicExecutionEnabled = useSymbolicExecution,
-            analysisCwe = cwe.takeIf { it.isNotEmpty() }?.toSet(),
+            analysisCwe = analysisCwe,
             summarySerializationContext = summarySerializationContext,
             storeSummaries = storeSummaries,
+            taintRulesWarmUpThreads = taintRulesWarmUpThreads,
             debugOptions = debugOptions
         ).use { analyzer ->
             val sourcesResolver = JIRSourceFileResolver(
@@ -174,6 +145,9 @@ class ProjectAnalyzer(
             val traces = analyzer.analyzeWithIfds(entryPoints)
             logger.info { "Finish IFDS analysis for project: ${project.sourceRoot}" }
 
+            resolvedRulesIndexes.forEach { it.save() }
+            logger.info { "Taint rules cache stats:\n${ruleCaches.stats()}" }
+
             (resultDir / "report-ifds.sarif").outputStream().use {
                 generateSarifReportFromTraces(it, sourcesResolver, traces)
             }
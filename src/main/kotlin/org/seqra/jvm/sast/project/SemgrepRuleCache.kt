@@ -0,0 +1,120 @@
+package org.seqra.jvm.sast.project
+
+import kotlinx.serialization.ExperimentalSerializationApi
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.cbor.Cbor
+import kotlinx.serialization.decodeFromByteArray
+import kotlinx.serialization.encodeToByteArray
+import mu.KLogging
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedTaintConfig
+import org.seqra.jvm.sast.dataflow.rules.ResolvedRulesIndex
+import org.seqra.semgrep.pattern.AbstractSemgrepError
+import org.seqra.semgrep.pattern.SemgrepRuleErrors
+import org.seqra.semgrep.pattern.SemgrepRuleLoader
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.io.path.createDirectories
+import kotlin.io.path.createTempFile
+import kotlin.io.path.deleteIfExists
+import kotlin.io.path.div
+import kotlin.io.path.exists
+import kotlin.io.path.moveTo
+import kotlin.io.path.readBytes
+import kotlin.io.path.toPath
+import kotlin.io.path.writeBytes
+
+/**
+ * Persistent cache of the compiled semgrep rules.
+ *
+ * Entry is keyed by the rule content hash and the compiler version,
+ * and stores the rule taint config together with the errors reported during the rule compilation.
+ * Compiler version is the content hash of the semgrep and taint configuration classes.
+ * */
+@OptIn(ExperimentalSerializationApi::class)
+class SemgrepRuleCache(
+    private val cacheDir: Path,
+    private val loader: SemgrepRuleLoader,
+) {
+    @Serializable
+    private class CachedRule(
+        val config: SerializedTaintConfig?,
+        val errors: List<AbstractSemgrepError>,
+    )
+
+    private val hitsCount = AtomicInteger()
+    private val missesCount = AtomicInteger()
+
+    val hits: Int get() = hitsCount.get()
+    val misses: Int get() = missesCount.get()
+
+    private val compilerVersion: String by lazy {
+        val locations = listOf(SemgrepRuleLoader::class.java, SerializedTaintConfig::class.java).mapNotNull {
+            it.protectionDomain.codeSource?.location?.toURI()?.toPath()
+        }
+        ResolvedRulesIndex.valuesHash(listOf(FORMAT_VERSION.toString(), ResolvedRulesIndex.contentHash(locations)))
+    }
+
+    /**
+     * Returns the cached rule config or compiles the rule with [compile].
+     * Null config is cached as well, so the failed rule is not recompiled until it is changed.
+     *
+     * Rule is compiled into its own errors, so the cached errors are exactly the compilation errors,
+     * regardless of the errors already reported to the rule.
+     * */
+    fun getOrCompile(
+        rule: SemgrepRuleLoader.ParsedRule,
+        compile: (SemgrepRuleErrors) -> SerializedTaintConfig?,
+    ): SerializedTaintConfig? {
+        val entryFile = cacheDir / "${entryKey(rule)}.bin"
+
+        val cached = if (entryFile.exists()) readEntry(entryFile) else null
+        if (cached != null) {
+            hitsCount.incrementAndGet()
+            cached.errors.forEach { rule.errors += it }
+            return cached.config
+        }
+
+        missesCount.incrementAndGet()
+
+        val compilationErrors = SemgrepRuleErrors(rule.errors.ruleId, rule.errors.ruleIdInFile)
+        val config = compile(compilationErrors)
+
+        // Errors are already logged on compilation
+        rule.errors.errors.addAll(compilationErrors.errors)
+
+        writeEntry(entryFile, CachedRule(config, compilationErrors.errors.toList()))
+        return config
+    }
+
+    private fun entryKey(rule: SemgrepRuleLoader.ParsedRule): String =
+        ResolvedRulesIndex.valuesHash(listOf(compilerVersion, rule.ruleSetName, loader.ruleContent(rule)))
+
+    private fun readEntry(entryFile: Path): CachedRule? = runCatching {
+        Cbor.decodeFromByteArray<CachedRule>(entryFile.readBytes())
+    }.onFailure { ex ->
+        logger.warn(ex) { "Failed to read compiled semgrep rule from $entryFile" }
+    }.getOrNull()
+
+    // Entry is written to a unique temporary file first, so concurrent runs never read a partial entry
+    private fun writeEntry(entryFile: Path, entry: CachedRule) {
+        runCatching {
+            cacheDir.createDirectories()
+            val tmpFile = createTempFile(cacheDir, entryFile.fileName.toString(), ".tmp")
+            try {
+                tmpFile.writeBytes(Cbor.encodeToByteArray(entry))
+                tmpFile.moveTo(entryFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+            } finally {
+                tmpFile.deleteIfExists()
+            }
+        }.onFailure { ex ->
+            logger.warn(ex) { "Failed to write compiled semgrep rule to $entryFile" }
+        }
+    }
+
+    companion object {
+        private const val FORMAT_VERSION = 1
+
+        private val logger = object : KLogging() {}.logger
+    }
+}
@@ -25,6 +25,15 @@ abstract class AbstractAnalyzerRunner : CliWithLogger() {
         .choice(ApMode.entries.associateBy { it.name })
         .default(ApMode.Tree)
 
+    protected val taintRulesWarmUpThreads: Int? by option(
+        help = "Resolve taint rules of project methods and their callees in the given number of threads before analysis. " +
+            "Warm-up time is counted in the IFDS analysis timeout"
+    ).int()
+
+    protected val taintRulesCacheSize: Int? by option(
+        help = "Max total number of entries in the taint rules caches. Unbounded if not specified"
+    ).int()
+
     private val debugTaintRulesStats: Boolean by
         option(help = "Enable reporting stats about analyzer steps per taint rule")
         .flag(default = false)
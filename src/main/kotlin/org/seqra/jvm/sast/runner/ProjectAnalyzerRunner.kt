@@ -7,9 +7,12 @@ import com.github.ajalt.clikt.parameters.options.option
 import com.github.ajalt.clikt.parameters.types.boolean
 import com.github.ajalt.clikt.parameters.types.int
 import com.github.ajalt.clikt.parameters.types.path
+import com.github.ajalt.clikt.parameters.types.restrictTo
 import org.seqra.jvm.sast.dataflow.JIRTaintAnalyzer.DebugOptions
+import org.seqra.jvm.sast.project.AnalyzerRules
 import org.seqra.jvm.sast.project.ProjectAnalyzer
 import org.seqra.jvm.sast.util.file
+import org.seqra.jvm.sast.util.newDirectory
 import org.seqra.project.Project
 import org.seqra.util.newFile
 import java.nio.file.Path
@@ -34,6 +37,32 @@ class ProjectAnalyzerRunner : AbstractAnalyzerRunner() {
     private val semgrepRuleLoadErrors: Path? by option(help = "Output file for errors encountered while loading Semgrep rules")
         .newFile()
 
+    private val semgrepCompilationThreads: Int by option(help = "Number of threads compiling Semgrep rules")
+        .int()
+        .restrictTo(min = 1)
+        .default(Runtime.getRuntime().availableProcessors())
+
+    private val semgrepRuleCache: Path? by option(help = "Directory with compiled Semgrep rules reused between analyzer runs")
+        .newDirectory()
+
+    private val semgrepDecisionDiagrams: Boolean by option(help = "Use decision diagrams for Semgrep rule formulas")
+        .boolean().default(false)
+
+    private val resolvedRulesIndex: Path? by option(help = "Directory with resolved rules index reused between analyzer runs")
+        .newDirectory()
+
+    private val analyzerRules by lazy {
+        AnalyzerRules(
+            config,
+            semgrepRuleSet,
+            semgrepRuleLoadErrors,
+            cwe.takeIf { it.isNotEmpty() }?.toSet(),
+            semgrepCompilationThreads,
+            semgrepRuleCache,
+            semgrepDecisionDiagrams,
+        )
+    }
+
     override fun analyzeProject(project: Project, analyzerOutputDir: Path, debugOptions: DebugOptions) {
         val projectAnalyzer = ProjectAnalyzer(
             project = project,
@@ -46,9 +75,10 @@ class ProjectAnalyzerRunner : AbstractAnalyzerRunner() {
             ifdsApMode = ifdsApMode,
             storeSummaries = true,
             projectKind = projectKind,
-            customConfig = config,
-            semgrepRuleSet = semgrepRuleSet,
-            semgrepRuleLoadErrors = semgrepRuleLoadErrors,
+            rules = analyzerRules,
+            resolvedRulesIndexDir = resolvedRulesIndex,
+            taintRulesWarmUpThreads = taintRulesWarmUpThreads,
+            taintRulesCacheSize = taintRulesCacheSize,
             debugOptions = debugOptions
         )
 
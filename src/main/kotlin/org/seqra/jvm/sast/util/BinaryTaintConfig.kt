@@ -0,0 +1,102 @@
+package org.seqra.jvm.sast.util
+
+import kotlinx.serialization.ExperimentalSerializationApi
+import kotlinx.serialization.cbor.Cbor
+import kotlinx.serialization.decodeFromByteArray
+import kotlinx.serialization.descriptors.SerialDescriptor
+import kotlinx.serialization.descriptors.elementDescriptors
+import kotlinx.serialization.encodeToByteArray
+import kotlinx.serialization.serializer
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedTaintConfig
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.file.Path
+import java.security.MessageDigest
+import kotlin.io.path.inputStream
+
+/**
+ * Precompiled binary form of the [SerializedTaintConfig].
+ * Decoding skips YAML parsing, which dominates the default config loading.
+ *
+ * Binary config stores the hash of the config file it was compiled from and the hash of the config schema,
+ * so a binary config that doesn't match the config file or the analyzer classes is never used.
+ * */
+@OptIn(ExperimentalSerializationApi::class)
+object BinaryTaintConfig {
+    private const val MAGIC = 0x53544346 // STCF
+    private const val FORMAT_VERSION = 2
+    private const val HASH_BUFFER_SIZE = 1 shl 16
+
+    private val schemaHash: String by lazy {
+        val schema = StringBuilder()
+        serializer<SerializedTaintConfig>().descriptor.describe(schema, hashSetOf())
+        digest().digest(schema.toString().toByteArray()).toHex()
+    }
+
+    /**
+     * Hash of the config file as stored: the binary config is compared with the file without decoding it.
+     * */
+    fun sourceHash(configPath: Path): String {
+        val digest = digest()
+        configPath.inputStream().use { inp ->
+            val buffer = ByteArray(HASH_BUFFER_SIZE)
+            while (true) {
+                val read = inp.read(buffer)
+                if (read < 0) break
+                digest.update(buffer, 0, read)
+            }
+        }
+        return digest.digest().toHex()
+    }
+
+    fun write(config: SerializedTaintConfig, sourceHash: String, out: OutputStream) {
+        val data = Cbor.encodeToByteArray(config)
+
+        val dataOut = DataOutputStream(out)
+        dataOut.writeInt(MAGIC)
+        dataOut.writeInt(FORMAT_VERSION)
+        dataOut.writeUTF(schemaHash)
+        dataOut.writeUTF(sourceHash)
+        dataOut.writeInt(data.size)
+        dataOut.write(data)
+        dataOut.flush()
+    }
+
+    /**
+     * Returns null if the [inp] is not in the supported binary format,
+     * or if it was compiled from another config than the one with the [sourceHash].
+     * */
+    fun read(inp: InputStream, sourceHash: String): SerializedTaintConfig? {
+        val dataInp = DataInputStream(inp)
+        if (dataInp.readInt() != MAGIC) return null
+        if (dataInp.readInt() != FORMAT_VERSION) return null
+        if (dataInp.readUTF() != schemaHash) return null
+        if (dataInp.readUTF() != sourceHash) return null
+
+        val data = ByteArray(dataInp.readInt())
+        dataInp.readFully(data)
+
+        return Cbor.decodeFromByteArray<SerializedTaintConfig>(data)
+    }
+
+    private fun SerialDescriptor.describe(schema: StringBuilder, visited: MutableSet<String>) {
+        schema.append(serialName).append(':').append(kind).append(':').append(isNullable)
+        if (!visited.add(serialName)) return
+
+        schema.append('{')
+        for (i in 0 until elementsCount) {
+            schema.append(getElementName(i)).append('=')
+        }
+        for (element in elementDescriptors) {
+            element.describe(schema, visited)
+            schema.append(',')
+        }
+        schema.append('}')
+    }
+
+    private fun digest(): MessageDigest = MessageDigest.getInstance("SHA-256")
+
+    private fun ByteArray.toHex(): String = joinToString("") { "%02x".format(it) }
+}
@@ -1,6 +1,8 @@
 package org.seqra.jvm.sast.util
 
+import org.seqra.dataflow.configuration.jvm.serialized.loadSerializedTaintConfig
 import java.io.InputStream
+import java.io.OutputStream
 import java.nio.file.Files
 import java.nio.file.Path
 import java.util.zip.GZIPInputStream
@@ -64,7 +66,7 @@ object ConfigUtils {
             }
         }
 
-    private fun encryptAndSave(src: Path, result: Path) {
+    private fun encryptAndSave(result: Path, body: OutputStream.() -> Unit) {
         val cipher = mkCipher()
         cipher.init(Cipher.ENCRYPT_MODE, secretKey)
 
@@ -72,7 +74,7 @@ object ConfigUtils {
             os.write(cipher.iv.also { check(it.size == IV_LEN) })
             CipherOutputStream(os, cipher).use { s ->
                 GZIPOutputStream(s, ZIP_BUFFER_SIZE).use { zos ->
-                    Files.copy(src, zos)
+                    body(zos)
                 }
             }
         }
@@ -80,7 +82,14 @@ object ConfigUtils {
 
     @JvmStatic
     fun main(args: Array<String>) {
-        val (src, dst) = args
-        encryptAndSave(Path(src), Path(dst))
+        val src = Path(args[0])
+        val dst = Path(args[1])
+        encryptAndSave(dst) { Files.copy(src, this) }
+
+        val binaryDst = args.getOrNull(2) ?: return
+        val config = src.inputStream().use { loadSerializedTaintConfig(it) }
+        // Binary config is bound to the written config file, so it is invalidated when the file is rebuilt
+        val sourceHash = BinaryTaintConfig.sourceHash(dst)
+        encryptAndSave(Path(binaryDst)) { BinaryTaintConfig.write(config, sourceHash, this) }
     }
 }
@@ -1,14 +1,43 @@
 package org.seqra.jvm.sast.util
 
+import mu.KLogging
 import org.seqra.dataflow.configuration.jvm.serialized.SerializedTaintConfig
 import org.seqra.dataflow.configuration.jvm.serialized.loadSerializedTaintConfig
 import java.nio.file.Path
 import kotlin.io.path.Path
+import kotlin.io.path.exists
+import kotlin.time.measureTimedValue
+
+private val logger = object : KLogging() {}.logger
 
 private fun getPathFromEnv(envVar: String): Path =
     System.getenv(envVar)?.let { Path(it) } ?: error("$envVar not provided")
 
-fun loadDefaultConfig(): SerializedTaintConfig =
-    ConfigUtils.loadEncrypted(getPathFromEnv("seqra_taint_config_path")) {
-        loadSerializedTaintConfig(this)
+fun defaultConfigPath(): Path = getPathFromEnv("seqra_taint_config_path")
+
+internal fun defaultBinaryConfigPath(): Path? =
+    System.getenv("seqra_taint_config_binary_path")?.let { Path(it) }?.takeIf { it.exists() }
+
+fun loadDefaultConfig(): SerializedTaintConfig {
+    val (config, loadTime) = measureTimedValue {
+        loadDefaultBinaryConfig() ?: ConfigUtils.loadEncrypted(defaultConfigPath()) {
+            loadSerializedTaintConfig(this)
+        }
+    }
+
+    logger.debug { "Default taint config loaded in $loadTime" }
+    return config
+}
+
+// Binary config is an optimization: fall back to the YAML config if it is missing or outdated
+private fun loadDefaultBinaryConfig(): SerializedTaintConfig? {
+    val binaryConfigPath = defaultBinaryConfigPath() ?: return null
+    return runCatching {
+        val sourceHash = BinaryTaintConfig.sourceHash(defaultConfigPath())
+        ConfigUtils.loadEncrypted(binaryConfigPath) { BinaryTaintConfig.read(this, sourceHash) }
+    }.onFailure { ex ->
+        logger.warn(ex) { "Failed to load binary taint config from $binaryConfigPath" }
+    }.getOrNull().also { config ->
+        if (config == null) logger.info { "Binary taint config $binaryConfigPath is outdated, loading YAML config" }
     }
+}
@@ -0,0 +1,80 @@
+package org.seqra.jvm.sast.benchmark
+
+import com.github.ajalt.clikt.core.main
+import com.github.ajalt.clikt.parameters.options.default
+import com.github.ajalt.clikt.parameters.options.multiple
+import com.github.ajalt.clikt.parameters.options.option
+import com.github.ajalt.clikt.parameters.options.required
+import com.github.ajalt.clikt.parameters.types.choice
+import com.github.ajalt.clikt.parameters.types.int
+import com.github.ajalt.clikt.parameters.types.restrictTo
+import org.seqra.jvm.sast.project.ProjectAnalysisContext
+import org.seqra.jvm.sast.project.ProjectKind
+import org.seqra.jvm.sast.project.initializeProjectAnalysisContext
+import org.seqra.jvm.sast.util.file
+import org.seqra.jvm.sast.util.loadDefaultConfig
+import org.seqra.project.Project
+import org.seqra.util.CliWithLogger
+import java.nio.file.Path
+
+/**
+ * Runs the analyzer performance benchmarks against the default taint config.
+ * */
+class BenchmarkRunner : CliWithLogger() {
+    enum class Benchmark {
+        RULE_RESOLUTION,
+        PATTERN_MATCHERS,
+        RULE_LOOKUP,
+        RULE_SHARING,
+        CONFIG_LOADING,
+    }
+
+    private val benchmark: Benchmark by option(help = "Benchmark to run")
+        .choice(Benchmark.entries.associateBy { it.name.lowercase().replace('_', '-') })
+        .required()
+
+    private val project: Path? by option(help = "Project configuration (yaml) for the project benchmarks")
+        .file()
+
+    private val threads: List<Int> by option(help = "Thread counts of the concurrent benchmarks")
+        .int().restrictTo(min = 1).multiple(default = listOf(1, 2, 4, 8, 16, 32))
+
+    private val warmUpRuns: Int by option(help = "Number of not measured runs")
+        .int().restrictTo(min = 0).default(3)
+
+    private val runs: Int by option(help = "Number of measured runs")
+        .int().restrictTo(min = 1).default(5)
+
+    private val params by lazy { BenchmarkParams(warmUpRuns, runs) }
+
+    override fun main() {
+        when (benchmark) {
+            Benchmark.RULE_RESOLUTION -> withProject {
+                benchmarkRuleResolution(it, loadDefaultConfig(), threads, params)
+            }
+
+            Benchmark.PATTERN_MATCHERS -> benchmarkPatternMatchers(loadDefaultConfig(), params)
+
+            Benchmark.RULE_LOOKUP -> withProject {
+                benchmarkRuleLookups(it, loadDefaultConfig(), params)
+            }
+
+            Benchmark.RULE_SHARING -> withProject {
+                benchmarkRuleSharing(it, loadDefaultConfig())
+            }
+
+            Benchmark.CONFIG_LOADING -> benchmarkConfigLoading(params)
+        }
+    }
+
+    private fun withProject(body: (ProjectAnalysisContext) -> Unit) {
+        val projectPath = checkNotNull(project) { "Project is required for $benchmark benchmark" }
+        val project = Project.load(projectPath).resolve(projectPath.parent)
+        initializeProjectAnalysisContext(project, null, ProjectKind.UNKNOWN).use(body)
+    }
+
+    companion object {
+        @JvmStatic
+        fun main(args: Array<String>) = BenchmarkRunner().main(args)
+    }
+}
@@ -0,0 +1,56 @@
+package org.seqra.jvm.sast.benchmark
+
+import org.seqra.ir.api.jvm.JIRMethod
+import org.seqra.ir.api.jvm.cfg.JIRInst
+import org.seqra.ir.api.jvm.ext.cfg.callExpr
+import org.seqra.ir.impl.features.classpaths.JIRUnknownClass
+import org.seqra.jvm.sast.project.ProjectAnalysisContext
+import kotlin.time.Duration
+import kotlin.time.measureTime
+
+class BenchmarkParams(val warmUpRuns: Int, val runs: Int)
+
+/**
+ * Median time of the measured runs.
+ * Result of the [body] is accumulated, so the JIT can't drop the measured code.
+ * */
+fun BenchmarkParams.measure(body: () -> Long): Duration = measure(setup = {}) { body() }
+
+/**
+ * Median time of the measured runs, [setup] of every run is not measured.
+ * */
+fun <T> BenchmarkParams.measure(setup: () -> T, body: (T) -> Long): Duration {
+    repeat(warmUpRuns) { blackhole += body(setup()) }
+
+    val times = List(runs) {
+        val state = setup()
+        measureTime { blackhole += body(state) }
+    }
+    return times.sorted()[times.size / 2]
+}
+
+@Volatile
+private var blackhole: Long = 0
+
+fun Duration.perSecond(operations: Long): Long =
+    (operations / inWholeNanoseconds.coerceAtLeast(1).toDouble() * 1e9).toLong()
+
+class CallSite(val callee: JIRMethod, val statement: JIRInst)
+
+fun ProjectAnalysisContext.projectMethods(): List<JIRMethod> = projectClasses.projectLocations
+    .flatMap { location -> cp.db.persistence.findClassSources(cp.db, location) }
+    .mapNotNull { cp.findClassOrNull(it.className) }
+    .filterNot { it is JIRUnknownClass }
+    .flatMap { it.declaredMethods }
+    .filterNot { it.isAbstract || it.isNative }
+
+/**
+ * Call sites of the project methods: the rules lookups the analyzer makes for every call statement.
+ * */
+fun ProjectAnalysisContext.projectCallSites(): List<CallSite> = projectMethods().flatMap { method ->
+    runCatching {
+        method.instList.mapNotNull { inst ->
+            inst.callExpr?.method?.method?.let { CallSite(it, inst) }
+        }
+    }.getOrDefault(emptyList())
+}
@@ -0,0 +1,42 @@
+package org.seqra.jvm.sast.benchmark
+
+import mu.KLogging
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedTaintConfig
+import org.seqra.dataflow.configuration.jvm.serialized.loadSerializedTaintConfig
+import org.seqra.jvm.sast.util.BinaryTaintConfig
+import org.seqra.jvm.sast.util.ConfigUtils
+import org.seqra.jvm.sast.util.defaultBinaryConfigPath
+import org.seqra.jvm.sast.util.defaultConfigPath
+import java.io.ByteArrayOutputStream
+
+private val logger = object : KLogging() {}.logger
+
+/**
+ * Loading time of the default taint config from the YAML config and from the binary config.
+ * Binary config loading includes the config file hash check, as in the analyzer.
+ * */
+fun benchmarkConfigLoading(params: BenchmarkParams) {
+    val configPath = defaultConfigPath()
+    val binaryConfigPath = checkNotNull(defaultBinaryConfigPath()) { "Binary taint config not found" }
+
+    fun loadYaml(): SerializedTaintConfig =
+        ConfigUtils.loadEncrypted(configPath) { loadSerializedTaintConfig(this) }
+
+    fun loadBinary(): SerializedTaintConfig {
+        val sourceHash = BinaryTaintConfig.sourceHash(configPath)
+        val config = ConfigUtils.loadEncrypted(binaryConfigPath) { BinaryTaintConfig.read(this, sourceHash) }
+        return checkNotNull(config) { "Binary taint config $binaryConfigPath is outdated" }
+    }
+
+    check(loadYaml().encoded().contentEquals(loadBinary().encoded())) {
+        "Binary taint config differs from the YAML config"
+    }
+
+    val yamlTime = params.measure { loadYaml().sink.orEmpty().size.toLong() }
+    val binaryTime = params.measure { loadBinary().sink.orEmpty().size.toLong() }
+
+    logger.info { "YAML config loaded in $yamlTime, binary config loaded in $binaryTime" }
+}
+
+private fun SerializedTaintConfig.encoded(): ByteArray =
+    ByteArrayOutputStream().also { BinaryTaintConfig.write(this, sourceHash = "", it) }.toByteArray()
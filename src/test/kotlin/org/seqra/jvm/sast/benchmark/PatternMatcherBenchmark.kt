@@ -0,0 +1,68 @@
+package org.seqra.jvm.sast.benchmark
+
+import mu.KLogging
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher.Pattern
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedNameMatcher.Simple
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedTaintConfig
+import org.seqra.jvm.sast.dataflow.rules.PatternManager
+import org.seqra.jvm.sast.dataflow.rules.PatternMatcher
+
+private val logger = object : KLogging() {}.logger
+
+/**
+ * Matching time of the rule name patterns with the [PatternManager] matchers and with the regex engine.
+ * Patterns of every name kind are matched with the concrete names of the same kind from the same config,
+ * the same way the rule storages match them: method names by containment, packages and classes fully.
+ * */
+fun benchmarkPatternMatchers(config: SerializedTaintConfig, params: BenchmarkParams) {
+    val functions = config.methodRules().map { it.function }
+
+    benchmarkNameKind("method name", functions.map { it.name }, fullMatch = false, params)
+    benchmarkNameKind("package", functions.map { it.`package` }, fullMatch = true, params)
+    benchmarkNameKind("class", functions.map { it.`class` }, fullMatch = true, params)
+}
+
+private fun SerializedTaintConfig.methodRules() =
+    listOfNotNull(entryPoint, source, sink, passThrough, cleaner, methodExitSink, methodEntrySink).flatten()
+
+private fun benchmarkNameKind(
+    kind: String,
+    matchers: List<SerializedNameMatcher>,
+    fullMatch: Boolean,
+    params: BenchmarkParams,
+) {
+    val patterns = matchers.filterIsInstance<Pattern>().mapTo(linkedSetOf()) { it.pattern }.toList()
+    val names = matchers.filterIsInstance<Simple>().mapTo(linkedSetOf()) { it.value }.toList()
+    if (patterns.isEmpty() || names.isEmpty()) {
+        logger.info { "$kind: ${patterns.size} patterns, ${names.size} names, nothing to match" }
+        return
+    }
+
+    val patternManager = PatternManager()
+    val matchers = patterns.map { if (fullMatch) patternManager.fullPatternMatcher(it) else patternManager.patternMatcher(it) }
+    val regexes = patterns.map { it.toRegex() }
+
+    val mismatches = patterns.indices.sumOf { idx ->
+        names.count { name -> matchers[idx].match(name) != regexes[idx].match(name, fullMatch) }
+    }
+    check(mismatches == 0) { "$kind: $mismatches matcher results differ from regex" }
+
+    val matches = names.size.toLong() * patterns.size
+    val regexTime = params.measure {
+        regexes.sumOf { regex -> names.count { regex.match(it, fullMatch) }.toLong() }
+    }
+    val matcherTime = params.measure {
+        matchers.sumOf { matcher -> names.count { matcher.match(it) }.toLong() }
+    }
+
+    val regexFallbacks = matchers.count { it is PatternMatcher.RegexMatcher }
+    logger.info {
+        "$kind: ${patterns.size} patterns ($regexFallbacks regex fallbacks), ${names.size} names: " +
+            "regex $regexTime (${regexTime.perSecond(matches)} matches/s), " +
+            "matchers $matcherTime (${matcherTime.perSecond(matches)} matches/s)"
+    }
+}
+
+private fun Regex.match(str: String, fullMatch: Boolean): Boolean =
+    if (fullMatch) matches(str) else containsMatchIn(str)
@@ -0,0 +1,77 @@
+package org.seqra.jvm.sast.benchmark
+
+import mu.KLogging
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedTaintConfig
+import org.seqra.jvm.sast.dataflow.JIRTaintRulesProvider
+import org.seqra.jvm.sast.dataflow.rules.TaintConfiguration
+import org.seqra.jvm.sast.project.ProjectAnalysisContext
+
+private val logger = object : KLogging() {}.logger
+
+private const val RULE_KINDS = 8
+
+/**
+ * Lookups of all rule kinds for every project call site,
+ * through the [JIRTaintRulesProvider] that skips rule kinds by the method rule kinds mask,
+ * and directly from the [TaintConfiguration] storages, as the provider did without the mask.
+ * */
+fun benchmarkRuleLookups(context: ProjectAnalysisContext, config: SerializedTaintConfig, params: BenchmarkParams) {
+    val callSites = context.projectCallSites()
+    val lookups = callSites.size.toLong() * RULE_KINDS
+    logger.info { "Rule lookup benchmark: ${callSites.size} call sites" }
+
+    fun newConfiguration() = TaintConfiguration(context.cp).also { it.loadConfig(config) }
+
+    val coldProvider = params.measure(setup = { JIRTaintRulesProvider(newConfiguration()) }) { provider ->
+        provider.lookup(callSites)
+    }
+    val coldStorages = params.measure(setup = { newConfiguration() }) { configuration ->
+        configuration.lookup(callSites)
+    }
+
+    val provider = JIRTaintRulesProvider(newConfiguration()).also { it.lookup(callSites) }
+    val warmProvider = params.measure { provider.lookup(callSites) }
+
+    val configuration = newConfiguration().also { it.lookup(callSites) }
+    val warmStorages = params.measure { configuration.lookup(callSites) }
+
+    logger.info {
+        "Storages: cold $coldStorages (${coldStorages.perSecond(lookups)} lookups/s), " +
+            "warm $warmStorages (${warmStorages.perSecond(lookups)} lookups/s)"
+    }
+    logger.info {
+        "Provider: cold $coldProvider (${coldProvider.perSecond(lookups)} lookups/s), " +
+            "warm $warmProvider (${warmProvider.perSecond(lookups)} lookups/s)"
+    }
+}
+
+private fun JIRTaintRulesProvider.lookup(callSites: List<CallSite>): Long = callSites.sumOf { site ->
+    val method = site.callee
+    val statement = site.statement
+
+    var rules = 0L
+    rules += entryPointRulesForMethod(method).count()
+    rules += sourceRulesForMethod(method, statement).count()
+    rules += sinkRulesForMethod(method, statement).count()
+    rules += passTroughRulesForMethod(method, statement).count()
+    rules += cleanerRulesForMethod(method, statement).count()
+    rules += sinkRulesForMethodExit(method, statement).count()
+    rules += sinkRulesForAnalysisEnd(method, statement).count()
+    rules += sinkRulesForMethodEntry(method).count()
+    rules
+}
+
+private fun TaintConfiguration.lookup(callSites: List<CallSite>): Long = callSites.sumOf { site ->
+    val method = site.callee
+
+    var rules = 0L
+    rules += entryPointForMethod(method).size
+    rules += sourceForMethod(method).size
+    rules += sinkForMethod(method).size
+    rules += passThroughForMethod(method).size
+    rules += cleanerForMethod(method).size
+    rules += methodExitSinkForMethod(method).size
+    rules += analysisEndSinkForMethod(method).size
+    rules += methodEntrySinkForMethod(method).size
+    rules
+}
@@ -0,0 +1,97 @@
+package org.seqra.jvm.sast.benchmark
+
+import mu.KLogging
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedTaintConfig
+import org.seqra.ir.api.jvm.JIRMethod
+import org.seqra.jvm.sast.dataflow.rules.TaintConfiguration
+import org.seqra.jvm.sast.project.ProjectAnalysisContext
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.random.Random
+
+private val logger = object : KLogging() {}.logger
+
+/**
+ * Rules resolution throughput of one [TaintConfiguration] shared by the growing number of threads.
+ * Every thread looks up the rules of all project call sites in its own order,
+ * so the threads resolve and read the rules of the same methods at the same time.
+ *
+ * Cold runs start with an empty configuration cache, warm runs only read the resolved rules.
+ * Serialized runs take one lock per rule kind around every lookup, as the synchronized rule storages did.
+ * */
+fun benchmarkRuleResolution(
+    context: ProjectAnalysisContext,
+    config: SerializedTaintConfig,
+    threads: List<Int>,
+    params: BenchmarkParams,
+) {
+    val callees = context.projectCallSites().map { it.callee }
+    logger.info { "Rule resolution benchmark: ${callees.size} call sites" }
+
+    for (serialized in listOf(true, false)) {
+        for (threadCount in threads) {
+            val orders = List(threadCount) { callees.shuffled(Random(it)) }
+            val lookups = callees.size.toLong() * threadCount * RuleLookups.KINDS
+
+            val cold = params.measure(setup = { RuleLookups(context.newConfiguration(config), serialized) }) { rules ->
+                rules.lookupConcurrently(orders)
+            }
+
+            val warmRules = RuleLookups(context.newConfiguration(config), serialized)
+            warmRules.lookupConcurrently(orders)
+            val warm = params.measure { warmRules.lookupConcurrently(orders) }
+
+            val mode = if (serialized) "serialized" else "concurrent"
+            logger.info {
+                "$mode, $threadCount threads: " +
+                    "cold $cold (${cold.perSecond(lookups)} lookups/s), " +
+                    "warm $warm (${warm.perSecond(lookups)} lookups/s)"
+            }
+        }
+    }
+}
+
+private fun ProjectAnalysisContext.newConfiguration(config: SerializedTaintConfig) =
+    TaintConfiguration(cp).also { it.loadConfig(config) }
+
+private class RuleLookups(private val config: TaintConfiguration, private val serialized: Boolean) {
+    private val kindLocks = Array(KINDS) { Any() }
+
+    fun lookupConcurrently(orders: List<List<JIRMethod>>): Long {
+        val executor = Executors.newFixedThreadPool(orders.size)
+        try {
+            val start = CountDownLatch(1)
+            val rules = AtomicLong()
+            val tasks = orders.map { methods ->
+                executor.submit {
+                    start.await()
+                    rules.addAndGet(methods.sumOf { lookup(it) })
+                }
+            }
+            start.countDown()
+            tasks.forEach { it.get() }
+            return rules.get()
+        } finally {
+            executor.shutdown()
+        }
+    }
+
+    private fun lookup(method: JIRMethod): Long {
+        var rules = 0L
+        rules += kind(0) { config.sourceForMethod(method).size }
+        rules += kind(1) { config.sinkForMethod(method).size }
+        rules += kind(2) { config.passThroughForMethod(method).size }
+        rules += kind(3) { config.cleanerForMethod(method).size }
+        return rules
+    }
+
+    private inline fun kind(idx: Int, body: () -> Int): Int {
+        if (!serialized) return body()
+        return synchronized(kindLocks[idx]) { body() }
+    }
+
+    companion object {
+        const val KINDS = 4
+    }
+}
@@ -0,0 +1,105 @@
+package org.seqra.jvm.sast.benchmark
+
+import mu.KLogging
+import org.seqra.dataflow.configuration.jvm.TaintConfigurationItem
+import org.seqra.dataflow.configuration.jvm.serialized.SerializedTaintConfig
+import org.seqra.jvm.sast.dataflow.rules.RuleCaches
+import org.seqra.jvm.sast.dataflow.rules.TaintConfiguration
+import org.seqra.jvm.sast.project.ProjectAnalysisContext
+import java.lang.reflect.Field
+import java.lang.reflect.Modifier
+import java.util.IdentityHashMap
+
+private val logger = object : KLogging() {}.logger
+
+private const val CONFIGURATION_PACKAGE = "org.seqra.dataflow.configuration.jvm."
+
+/**
+ * Sharing of the conditions, positions and actions of the rules resolved for the project methods and call sites.
+ *
+ * Reports the number of configuration objects the resolved items would reference without sharing,
+ * the number of distinct objects they reference, and the number of structurally distinct objects,
+ * the least number of objects with full sharing. Heap is measured after gc with and without the resolved items.
+ * */
+fun benchmarkRuleSharing(context: ProjectAnalysisContext, config: SerializedTaintConfig) {
+    val methods = context.projectMethods()
+    val callees = context.projectCallSites().mapTo(linkedSetOf()) { it.callee }
+
+    val heapBefore = usedHeapAfterGc()
+
+    val caches = RuleCaches(maxSize = null)
+    val configuration = TaintConfiguration(context.cp, caches = caches).also { it.loadConfig(config) }
+    val items = mutableListOf<TaintConfigurationItem>()
+    for (method in methods) {
+        items += configuration.entryPointForMethod(method)
+        items += configuration.methodExitSinkForMethod(method)
+        items += configuration.analysisEndSinkForMethod(method)
+        items += configuration.methodEntrySinkForMethod(method)
+    }
+    for (callee in callees) {
+        items += configuration.sourceForMethod(callee)
+        items += configuration.sinkForMethod(callee)
+        items += configuration.passThroughForMethod(callee)
+        items += configuration.cleanerForMethod(callee)
+    }
+
+    val heapWithItems = usedHeapAfterGc()
+
+    val stats = SharingStats()
+    items.forEach { stats.visitFields(it) }
+
+    logger.info {
+        "Resolved ${items.size} items for ${methods.size} methods and ${callees.size} callees: " +
+            "${stats.unsharedObjects} objects without sharing, ${stats.distinctObjects} distinct objects, " +
+            "${stats.structurallyDistinctObjects} structurally distinct objects"
+    }
+    logger.info { "Taint configuration with the resolved rules retains ${(heapWithItems - heapBefore) / 1024} KiB" }
+    logger.info { "Taint rules cache stats:\n${caches.stats()}" }
+}
+
+private fun usedHeapAfterGc(): Long {
+    val runtime = Runtime.getRuntime()
+    repeat(3) { System.gc() }
+    return runtime.totalMemory() - runtime.freeMemory()
+}
+
+private class SharingStats {
+    private val unsharedSize = IdentityHashMap<Any, Long>()
+    private val structural = hashSetOf<Any>()
+
+    var unsharedObjects = 0L
+        private set
+
+    val distinctObjects: Int get() = unsharedSize.size
+    val structurallyDistinctObjects: Int get() = structural.size
+
+    fun visitFields(value: Any) {
+        unsharedObjects += fieldValues(value).sumOf { unsharedSize(it) }
+    }
+
+    // Number of configuration objects in the value if no object was shared
+    private fun unsharedSize(value: Any?): Long {
+        if (value == null) return 0
+        if (value is Iterable<*>) return value.sumOf { unsharedSize(it) }
+        if (!value.javaClass.name.startsWith(CONFIGURATION_PACKAGE)) return 0
+
+        unsharedSize[value]?.let { return it }
+
+        structural.add(value)
+        val size = 1 + fieldValues(value).sumOf { unsharedSize(it) }
+        unsharedSize[value] = size
+        return size
+    }
+
+    private fun fieldValues(value: Any): List<Any?> = instanceFields(value.javaClass).map { it.get(value) }
+
+    private val classFields = hashMapOf<Class<*>, List<Field>>()
+
+    private fun instanceFields(cls: Class<*>): List<Field> = classFields.getOrPut(cls) {
+        generateSequence(cls) { it.superclass }
+            .flatMap { it.declaredFields.asSequence() }
+            .filterNot { Modifier.isStatic(it.modifiers) || it.type.isPrimitive }
+            .onEach { it.isAccessible = true }
+            .toList()
+    }
+}